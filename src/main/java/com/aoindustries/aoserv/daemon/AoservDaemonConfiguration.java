@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2001-2013, 2014, 2015, 2017, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2014, 2015, 2017, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -170,6 +170,17 @@ public final class AoservDaemonConfiguration {
     return maxConnectionAge == null || maxConnectionAge.isEmpty() ? AOPool.DEFAULT_MAX_CONNECTION_AGE : Long.parseLong(maxConnectionAge);
   }
 
+  /**
+   * Gets the maximum number of databases maintained concurrently by the weekly VACUUM and REINDEX.
+   */
+  public static int getPostgresMaintenanceConcurrency(com.aoindustries.aoserv.client.postgresql.Server.Name serverName) throws ConfigurationException {
+    String concurrency = getProperty("postgres." + serverName + ".maintenance_concurrency", null);
+    if (concurrency == null || concurrency.isEmpty()) {
+      concurrency = getProperty("postgres.maintenance_concurrency", null);
+    }
+    return concurrency == null || concurrency.isEmpty() ? 2 : Integer.parseInt(concurrency);
+  }
+
   public static String getMySqlDriver() throws ConfigurationException {
     return getProperty("mysql.driver", null, true);
   }
@@ -237,6 +248,7 @@ public final class AoservDaemonConfiguration {
     private final Long nullRouteFifoErrorRateMinPps;
     private final Long nullRoutePacketRate;
     private final Long nullRouteBitRate;
+    private final int historySeconds;
 
     private NetworkMonitorConfiguration(
         String name,
@@ -249,7 +261,8 @@ public final class AoservDaemonConfiguration {
         Long nullRouteFifoErrorRate,
         Long nullRouteFifoErrorRateMinPps,
         Long nullRoutePacketRate,
-        Long nullRouteBitRate
+        Long nullRouteBitRate,
+        int historySeconds
     ) {
       this.name = name;
       this.device = device;
@@ -262,6 +275,7 @@ public final class AoservDaemonConfiguration {
       this.nullRouteFifoErrorRateMinPps = nullRouteFifoErrorRateMinPps;
       this.nullRoutePacketRate = nullRoutePacketRate;
       this.nullRouteBitRate = nullRouteBitRate;
+      this.historySeconds = historySeconds;
     }
 
     public String getName() {
@@ -308,8 +322,23 @@ public final class AoservDaemonConfiguration {
     public Long getNullRouteBitRate() {
       return nullRouteBitRate;
     }
+
+    /**
+     * Gets the number of one-second records of per-IP traffic kept in memory, or {@code 0} to disable history.
+     */
+    public int getHistorySeconds() {
+      return historySeconds;
+    }
   }
 
+  /**
+   * The default number of seconds of per-IP traffic history kept by each network monitor.
+   * History is disabled by default in the daemon since it may use up to 32 MiB per monitor.
+   * {@link com.aoindustries.aoserv.daemon.monitor.NetworkMonitor#main(java.lang.String[])}
+   * always keeps at least fifteen minutes.
+   */
+  private static final int DEFAULT_NETWORK_MONITOR_HISTORY_SECONDS = 0;
+
   /**
    * Gets the set of network monitors that should be enabled on this server.
    */
@@ -325,6 +354,7 @@ public final class AoservDaemonConfiguration {
         String nullRouteFifoErrorRateMinPps = getProperty("monitor.NetworkMonitor.network." + name + ".nullRoute.fifoErrorRateMinPps", null);
         String nullRoutePacketRate = getProperty("monitor.NetworkMonitor.network." + name + ".nullRoute.packetRate", null);
         String nullRouteBitRate = getProperty("monitor.NetworkMonitor.network." + name + ".nullRoute.bitRate", null);
+        String historySeconds = getProperty("monitor.NetworkMonitor.network." + name + ".historySeconds", null);
         if (
             networkMonitors.put(
                 name,
@@ -339,7 +369,8 @@ public final class AoservDaemonConfiguration {
                     nullRouteFifoErrorRate == null || nullRouteFifoErrorRate.isEmpty() ? null : Long.valueOf(nullRouteFifoErrorRate),
                     nullRouteFifoErrorRateMinPps == null || nullRouteFifoErrorRateMinPps.isEmpty() ? null : Long.valueOf(nullRouteFifoErrorRateMinPps),
                     nullRoutePacketRate == null || nullRoutePacketRate.isEmpty() ? null : Long.valueOf(nullRoutePacketRate),
-                    nullRouteBitRate == null || nullRouteBitRate.isEmpty() ? null : Long.valueOf(nullRouteBitRate)
+                    nullRouteBitRate == null || nullRouteBitRate.isEmpty() ? null : Long.valueOf(nullRouteBitRate),
+                    historySeconds == null || historySeconds.isEmpty() ? DEFAULT_NETWORK_MONITOR_HISTORY_SECONDS : Integer.parseInt(historySeconds)
                 )
             ) != null
         ) {
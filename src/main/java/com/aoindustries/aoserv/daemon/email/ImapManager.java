@@ -76,15 +76,18 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.net.ProtocolFamily;
 import java.net.StandardProtocolFamily;
 import java.sql.SQLException;
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
@@ -97,10 +100,13 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -357,6 +363,157 @@ public final class ImapManager extends BuilderThread {
     }
   }
 
+  /**
+   * The maximum number of admin connections used for folder queries.  These are separate from
+   * {@link #getAdminStore()} so size queries do not wait behind the rebuild, or each other.
+   */
+  private static final int ADMIN_QUERY_STORE_POOL_SIZE = 4;
+
+  private static final Semaphore adminQueryStorePermits = new Semaphore(ADMIN_QUERY_STORE_POOL_SIZE, true);
+  private static final Object adminQueryStoresLock = new Object();
+  private static Session adminQuerySession;
+  private static final Deque<IMAPStore> idleAdminQueryStores = new ArrayDeque<>(ADMIN_QUERY_STORE_POOL_SIZE);
+
+  private static void closeQuietly(IMAPStore store) {
+    try {
+      store.close();
+    } catch (MessagingException err) {
+      logger.log(Level.SEVERE, null, err);
+    }
+  }
+
+  /**
+   * Borrows a connected IMAPStore for admin queries, blocking while all of the pool is in use.
+   * Every store borrowed must be given back to {@link #releaseAdminQueryStore(com.sun.mail.imap.IMAPStore, boolean)}.
+   *
+   * @return  the store or <code>null</code> if not an IMAP server
+   */
+  private static IMAPStore borrowAdminQueryStore() throws IOException, SQLException, MessagingException {
+    // Get things that may failed externally before allocating session and store
+    Tuple3<InetAddress, Port, Boolean> imapServer = getImapServer();
+    if (imapServer == null) {
+      return null;
+    }
+    String user = User.CYRUS + "@default";
+    String password = AoservDaemonConfiguration.getCyrusPassword();
+    Session session = getSession(imapServer);
+    try {
+      adminQueryStorePermits.acquire();
+    } catch (InterruptedException err) {
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+      InterruptedIOException ioErr = new InterruptedIOException();
+      ioErr.initCause(err);
+      throw ioErr;
+    }
+    boolean borrowed = false;
+    try {
+      IMAPStore store = null;
+      synchronized (adminQueryStoresLock) {
+        if (adminQuerySession != session) {
+          // Server changed, discard all idle connections
+          for (IMAPStore idle : idleAdminQueryStores) {
+            closeQuietly(idle);
+          }
+          idleAdminQueryStores.clear();
+          adminQuerySession = session;
+        }
+        while (store == null && !idleAdminQueryStores.isEmpty()) {
+          IMAPStore idle = idleAdminQueryStores.pop();
+          if (idle.isConnected()) {
+            store = idle;
+          } else {
+            closeQuietly(idle);
+          }
+        }
+      }
+      if (store == null) {
+        // Connect outside the lock so other queries may proceed
+        IMAPStore newStore = (IMAPStore) session.getStore();
+        newStore.connect(user, password);
+        store = newStore;
+      }
+      borrowed = true;
+      return store;
+    } finally {
+      if (!borrowed) {
+        adminQueryStorePermits.release();
+      }
+    }
+  }
+
+  /**
+   * Gives back a store from {@link #borrowAdminQueryStore()}.
+   *
+   * @param  reusable  when <code>false</code>, the store is closed instead of returned to the pool
+   */
+  private static void releaseAdminQueryStore(IMAPStore store, boolean reusable) {
+    try {
+      if (reusable) {
+        synchronized (adminQueryStoresLock) {
+          if (
+              store.getSession() == adminQuerySession
+                  && idleAdminQueryStores.size() < ADMIN_QUERY_STORE_POOL_SIZE
+          ) {
+            idleAdminQueryStores.push(store);
+            return;
+          }
+        }
+      }
+      closeQuietly(store);
+    } finally {
+      adminQueryStorePermits.release();
+    }
+  }
+
+  @FunctionalInterface
+  private interface AdminQuery<T> {
+    /**
+     * @return  the result, must not be <code>null</code>
+     */
+    T query(IMAPStore store) throws MessagingException;
+  }
+
+  /**
+   * Runs a query on a pooled admin store.  When the server has closed the connection for being idle
+   * too long, the query is retried on a new connection.
+   *
+   * @return  the result of the query or <code>null</code> if not an IMAP server
+   */
+  @SuppressWarnings("SleepWhileInLoop")
+  private static <T> T queryAdminStore(AdminQuery<T> query) throws IOException, SQLException, MessagingException {
+    int attempt = 1;
+    for (; attempt <= 10; attempt++) {
+      IMAPStore store = borrowAdminQueryStore();
+      if (store == null) {
+        return null;
+      }
+      boolean reusable = false;
+      try {
+        T result = query.query(store);
+        reusable = true;
+        return result;
+      } catch (MessagingException messagingException) {
+        String message = messagingException.getMessage();
+        if (message == null || !message.contains("* BYE idle for too long")) {
+          throw messagingException;
+        }
+        logger.log(Level.SEVERE, "attempt=" + attempt, messagingException);
+      } finally {
+        releaseAdminQueryStore(store, reusable);
+      }
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException err) {
+        logger.log(Level.WARNING, null, err);
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    throw new MessagingException("Unable to query admin store after " + (attempt - 1) + " attempts");
+  }
+
   /**
    * Gets access to the old IMAPStore for wu-imapd.
    */
@@ -2396,13 +2553,34 @@ public final class ImapManager extends BuilderThread {
     ) {
       String user = getUser(username);
       String domain = getDomain(username);
+      // Fetched all at once on the first folder not in the cache
+      Map<String, Long> folderSizes = null;
+      boolean folderSizesFetched = false;
       for (int c = 0; c < folderNames.length; c++) {
         String folderName = folderNames[c];
         if (folderName.contains("..")) {
           sizes[c] = -1;
         } else {
           boolean isInbox = "INBOX".equals(folderName);
-          sizes[c] = getCyrusFolderSize(user, isInbox ? "" : folderName, domain, !isInbox);
+          String mailboxName = getFolderName(user, domain, isInbox ? "" : folderName);
+          Long size = getCachedFolderSize(mailboxName);
+          if (size == null) {
+            if (!folderSizesFetched) {
+              folderSizes = getCyrusFolderSizes(user, domain);
+              folderSizesFetched = true;
+            }
+            if (folderSizes != null) {
+              size = folderSizes.get(mailboxName);
+            }
+          }
+          if (size != null) {
+            sizes[c] = size;
+          } else if (isInbox) {
+            // Let the single-folder lookup report the missing annotation
+            sizes[c] = getCyrusFolderSize(user, "", domain, false);
+          } else {
+            sizes[c] = 0;
+          }
         }
       }
     } else {
@@ -2451,9 +2629,21 @@ public final class ImapManager extends BuilderThread {
    * <p>https://glassfish.dev.java.net/javaee5/mail/
    * javamail@sun.com</p>
    */
+  private static List<Annotation> getAnnotations(IMAPFolder folder, String entry, String attribute) throws MessagingException {
+    return getAnnotations(folder, folder.getFullName(), entry, attribute);
+  }
+
+  /**
+   * Gets all of the annotations for the provided mailbox-name, entry, and attribute.
+   * The mailbox-name may contain the <code>*</code> and <code>%</code> wildcards
+   * to get the annotations of many mailboxes in one command.
+   *
+   * @param  folder  any folder of the store, used to issue the command
+   *
+   * @see  #getAnnotations(com.sun.mail.imap.IMAPFolder, java.lang.String, java.lang.String)
+   */
   @SuppressWarnings({"unchecked"})
-  private static List<Annotation> getAnnotations(IMAPFolder folder, final String entry, final String attribute) throws MessagingException {
-    final String mailboxName = folder.getFullName();
+  private static List<Annotation> getAnnotations(IMAPFolder folder, final String mailboxName, final String entry, final String attribute) throws MessagingException {
     List<Annotation> annotations = (List) folder.doCommand(p -> {
       // Issue command
       Argument args = new Argument();
@@ -2571,60 +2761,137 @@ public final class ImapManager extends BuilderThread {
     return getCyrusFolderSize(getUser(username), folder, getDomain(username), notFoundOk);
   }
 
+  /**
+   * The number of milliseconds a folder size is cached.  The control panel commonly asks for
+   * the sizes of all of a user's folders several times in quick succession.
+   */
+  private static final long FOLDER_SIZE_CACHE_TTL = 10L * 1000L;
+
+  /**
+   * The number of cached folder sizes that triggers removal of expired entries.
+   */
+  private static final int FOLDER_SIZE_CACHE_CLEANUP_SIZE = 10000;
+
+  private static final class CachedFolderSize {
+    private final long size;
+    private final long cachedTime;
+
+    private CachedFolderSize(long size, long cachedTime) {
+      this.size = size;
+      this.cachedTime = cachedTime;
+    }
+
+    private boolean isExpired(long currentTime) {
+      long age = currentTime - cachedTime;
+      return age < 0 || age >= FOLDER_SIZE_CACHE_TTL;
+    }
+  }
+
+  /**
+   * The recently queried folder sizes, keyed by full mailbox name.
+   */
+  private static final ConcurrentMap<String, CachedFolderSize> folderSizeCache = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the cached size of a folder.
+   *
+   * @return  the size or <code>null</code> when not cached or expired
+   */
+  private static Long getCachedFolderSize(String mailboxName) {
+    CachedFolderSize cached = folderSizeCache.get(mailboxName);
+    if (cached != null) {
+      if (!cached.isExpired(System.currentTimeMillis())) {
+        return cached.size;
+      }
+      folderSizeCache.remove(mailboxName, cached);
+    }
+    return null;
+  }
+
+  private static void cacheFolderSizes(Map<String, Long> sizes) {
+    long currentTime = System.currentTimeMillis();
+    for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+      folderSizeCache.put(entry.getKey(), new CachedFolderSize(entry.getValue(), currentTime));
+    }
+    if (folderSizeCache.size() >= FOLDER_SIZE_CACHE_CLEANUP_SIZE) {
+      folderSizeCache.values().removeIf(cached -> cached.isExpired(currentTime));
+    }
+  }
+
+  /**
+   * Gets the sizes of the inbox and all folders of a user, in two GETANNOTATION commands
+   * over one connection.  The second command uses a wildcard to match the whole folder tree:
+   *
+   * <pre>ad GETANNOTATION "user/cyrus.test/*@suspendo.aoindustries.com" "/vendor/cmu/cyrus-imapd/size" "value.shared"
+   * ANNOTATION "user/cyrus.test/Junk@suspendo.aoindustries.com" "/vendor/cmu/cyrus-imapd/size" ("value.shared" "33650")
+   * ANNOTATION "user/cyrus.test/Trash@suspendo.aoindustries.com" "/vendor/cmu/cyrus-imapd/size" ("value.shared" "0")
+   * ad OK Completed</pre>
+   *
+   * <p>The sizes found are also added to the cache.</p>
+   *
+   * @return  the sizes keyed by full mailbox name or <code>null</code> if not an IMAP server
+   */
+  private static Map<String, Long> getCyrusFolderSizes(String user, String domain) throws IOException, SQLException, MessagingException {
+    final String inboxName = getFolderName(user, domain, "");
+    final String treePattern = getFolderName(user, domain, "*");
+    Map<String, Long> sizes = queryAdminStore(store -> {
+      IMAPFolder inbox = (IMAPFolder) store.getFolder(inboxName);
+      List<Annotation> annotations = new ArrayList<>();
+      annotations.addAll(getAnnotations(inbox, inboxName, "/vendor/cmu/cyrus-imapd/size", "value.shared"));
+      annotations.addAll(getAnnotations(inbox, treePattern, "/vendor/cmu/cyrus-imapd/size", "value.shared"));
+      Map<String, Long> folderSizes = AoCollections.newHashMap(annotations.size());
+      for (Annotation annotation : annotations) {
+        if (annotation.getEntry().equals("/vendor/cmu/cyrus-imapd/size")) {
+          String value = annotation.getAttribute("value.shared");
+          if (value != null) {
+            folderSizes.put(annotation.getMailboxName(), Long.parseLong(value));
+          }
+        }
+      }
+      return folderSizes;
+    });
+    if (sizes != null) {
+      cacheFolderSizes(sizes);
+    }
+    return sizes;
+  }
+
   /**
    * @param notFoundOk if <code>true</code> will return <code>0</code> if annotation not found, MessagingException otherwise
    */
-  @SuppressWarnings("SleepWhileInLoop")
   private static long getCyrusFolderSize(String user, String folder, String domain, boolean notFoundOk) throws IOException, SQLException, MessagingException {
-    try {
-      // Connect to the store (will be null when not an IMAP server)
-      IMAPStore store = getAdminStore();
-      if (store == null) {
+    final String folderName = getFolderName(user, domain, folder);
+    Long cached = getCachedFolderSize(folderName);
+    if (cached != null) {
+      return cached;
+    }
+    Long size = queryAdminStore(store -> {
+      IMAPFolder mailbox = (IMAPFolder) store.getFolder(folderName);
+      try {
+        String value = getAnnotation(mailbox, "/vendor/cmu/cyrus-imapd/size", "value.shared");
+        if (value != null) {
+          long found = Long.parseLong(value);
+          cacheFolderSizes(Collections.singletonMap(folderName, found));
+          return found;
+        }
         if (!notFoundOk) {
-          throw new MessagingException("Not an IMAP server");
+          throw new MessagingException(folderName + ": \"/vendor/cmu/cyrus-imapd/size\" \"value.shared\" annotation not found");
         }
-        return 0;
-      }
-      String folderName = getFolderName(user, domain, folder);
-      int attempt = 1;
-      for (; attempt <= 10; attempt++) {
-        try {
-          IMAPFolder mailbox = (IMAPFolder) store.getFolder(folderName);
-          try {
-            String value = getAnnotation(mailbox, "/vendor/cmu/cyrus-imapd/size", "value.shared");
-            if (value != null) {
-              return Long.parseLong(value);
-            }
-            if (!notFoundOk) {
-              throw new MessagingException(folderName + ": \"/vendor/cmu/cyrus-imapd/size\" \"value.shared\" annotation not found");
-            }
-            return 0;
-          } finally {
-            if (mailbox.isOpen()) {
-              mailbox.close(false);
-            }
-          }
-        } catch (MessagingException messagingException) {
-          String message = messagingException.getMessage();
-          if (message == null || !message.contains("* BYE idle for too long")) {
-            throw messagingException;
-          }
-          logger.log(Level.SEVERE, "attempt=" + attempt, messagingException);
-          try {
-            Thread.sleep(100);
-          } catch (InterruptedException err) {
-            logger.log(Level.WARNING, null, err);
-            // Restore the interrupted status
-            Thread.currentThread().interrupt();
-            break;
-          }
+        return 0L;
+      } finally {
+        if (mailbox.isOpen()) {
+          mailbox.close(false);
         }
       }
-      throw new MessagingException("Unable to get folder size after " + (attempt - 1) + " attempts");
-    } catch (Error | RuntimeException | IOException | SQLException | MessagingException err) {
-      closeAdminStore();
-      throw err;
+    });
+    if (size == null) {
+      // Not an IMAP server
+      if (!notFoundOk) {
+        throw new MessagingException("Not an IMAP server");
+      }
+      return 0;
     }
+    return size;
   }
 
   public static long getInboxSize(User.Name username) throws IOException, SQLException, MessagingException {
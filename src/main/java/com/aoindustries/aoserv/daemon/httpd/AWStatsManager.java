@@ -49,18 +49,21 @@ import com.aoindustries.aoserv.daemon.client.AoservDaemonProtocol;
 import com.aoindustries.aoserv.daemon.posix.linux.PackageManager;
 import com.aoindustries.aoserv.daemon.util.BuilderThread;
 import com.aoindustries.aoserv.daemon.util.DaemonFileUtils;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -782,6 +785,131 @@ public final class AWStatsManager extends BuilderThread {
     return 15L * 60 * 1000;
   }
 
+  /**
+   * The largest single page kept in the page cache.
+   */
+  private static final int PAGE_CACHE_MAX_PAGE_SIZE = 1 << 20;
+
+  /**
+   * The total size of all pages kept in the page cache.
+   */
+  private static final long PAGE_CACHE_MAX_SIZE = 16L << 20;
+
+  /**
+   * Pages are regenerated at least this often, so pages that depend on the current date, such as
+   * the default month, do not remain stale when no data file has been updated.
+   */
+  private static final long PAGE_CACHE_MAX_AGE = 60L * 60 * 1000;
+
+  private static class CachedPage {
+
+    private final String dataVersion;
+    private final long created;
+    private final byte[] page;
+
+    private CachedPage(String dataVersion, long created, byte[] page) {
+      this.dataVersion = dataVersion;
+      this.created = created;
+      this.page = page;
+    }
+  }
+
+  /**
+   * The rendered pages, keyed by site and query string, in least-recently used order.
+   */
+  private static final Map<String, CachedPage> pageCache = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * The total size of all pages in {@link #pageCache}.
+   */
+  private static long pageCacheSize;
+
+  /**
+   * Gets the version of the data used to render the pages of a site, derived from the modification times of
+   * its configuration file and of the files in its data directory.  Each run of AWStats updates at least one
+   * data file, so any change in the statistics changes this version.
+   *
+   * @return  the version or <code>null</code> when the data directory cannot be read
+   */
+  private static String getDataVersion(HttpdOperatingSystemConfiguration osConfig, String siteName) {
+    File configFile = new File(osConfig.getAwstatsConfigDirectory().toString(), "awstats." + siteName + ".conf");
+    File dataDirectory = new File(new File(osConfig.getAwstatsHostsDirectory().toString(), siteName), "data");
+    File[] dataFiles = dataDirectory.listFiles();
+    if (dataFiles == null) {
+      return null;
+    }
+    long maxModified = dataDirectory.lastModified();
+    long totalLength = 0;
+    for (File dataFile : dataFiles) {
+      maxModified = Math.max(maxModified, dataFile.lastModified());
+      totalLength += dataFile.length();
+    }
+    return configFile.lastModified() + ":" + maxModified + ":" + dataFiles.length + ":" + totalLength;
+  }
+
+  /**
+   * Gets a cached page when its data version matches and it is not too old.
+   *
+   * @return  the page or <code>null</code> when not cached
+   */
+  private static byte[] getCachedPage(String cacheKey, String dataVersion) {
+    if (dataVersion == null) {
+      return null;
+    }
+    synchronized (pageCache) {
+      CachedPage cachedPage = pageCache.get(cacheKey);
+      if (cachedPage == null) {
+        return null;
+      }
+      long age = System.currentTimeMillis() - cachedPage.created;
+      if (
+          age < 0 || age >= PAGE_CACHE_MAX_AGE
+              || !cachedPage.dataVersion.equals(dataVersion)
+      ) {
+        pageCache.remove(cacheKey);
+        pageCacheSize -= cachedPage.page.length;
+        return null;
+      }
+      return cachedPage.page;
+    }
+  }
+
+  /**
+   * Adds a page to the cache, removing the least-recently used pages to stay within {@link #PAGE_CACHE_MAX_SIZE}.
+   */
+  private static void putCachedPage(String cacheKey, String dataVersion, byte[] page) {
+    synchronized (pageCache) {
+      CachedPage old = pageCache.put(cacheKey, new CachedPage(dataVersion, System.currentTimeMillis(), page));
+      if (old != null) {
+        pageCacheSize -= old.page.length;
+      }
+      pageCacheSize += page.length;
+      Iterator<CachedPage> iter = pageCache.values().iterator();
+      while (pageCacheSize > PAGE_CACHE_MAX_SIZE && iter.hasNext()) {
+        pageCacheSize -= iter.next().page.length;
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Skips the CGI headers, up to and including the first empty line.
+   */
+  private static void skipHeaders(InputStream in) throws IOException {
+    int lineLength = 0;
+    int ch;
+    while ((ch = in.read()) != -1) {
+      if (ch == '\n') {
+        if (lineLength == 0) {
+          return;
+        }
+        lineLength = 0;
+      } else if (ch != '\r') {
+        lineLength++;
+      }
+    }
+  }
+
   @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
   public static void getAwstatsFile(String siteName, String path, String queryString, StreamableOutput out) throws IOException, SQLException {
     HttpdOperatingSystemConfiguration osConfig = HttpdOperatingSystemConfiguration.getHttpOperatingSystemConfiguration();
@@ -832,46 +960,56 @@ public final class AWStatsManager extends BuilderThread {
         } else {
           throw new AssertionError("Unsupported OperatingSystemVersion: " + osv);
         }
-        AoservDaemon.execRun(
-            stdout -> {
-              try (BufferedReader in = new BufferedReader(new InputStreamReader(stdout))) {
-                // Skip the headers
-                String line;
-                while ((line = in.readLine()) != null && line.length() > 0) {
-                  // Intentional empty block
-                }
-
-                // Write the rest in blocks
-                byte[] buff = BufferManager.getBytes();
-                try {
-                  char[] chars = BufferManager.getChars();
+        String cacheKey = siteName + '?' + queryString;
+        String dataVersion = getDataVersion(osConfig, siteName);
+        byte[] cached = getCachedPage(cacheKey, dataVersion);
+        if (cached != null) {
+          for (int off = 0, len = cached.length; off < len; off += BufferManager.BUFFER_SIZE) {
+            int blockLen = Math.min(BufferManager.BUFFER_SIZE, len - off);
+            out.write(AoservDaemonProtocol.NEXT);
+            out.writeShort(blockLen);
+            out.write(cached, off, blockLen);
+          }
+        } else {
+          ByteArrayOutputStream[] capture = {new ByteArrayOutputStream()};
+          AoservDaemon.execRun(
+              stdout -> {
+                try (InputStream in = new BufferedInputStream(stdout)) {
+                  skipHeaders(in);
+                  // Write the rest in blocks, bytes are passed-through unchanged
+                  byte[] buff = BufferManager.getBytes();
                   try {
                     int ret;
-                    while ((ret = in.read(chars, 0, BufferManager.BUFFER_SIZE)) != -1) {
-                      // Convert to bytes by simple cast - assumes ISO8859-1 encoding
-                      for (int c = 0; c < ret; c++) {
-                        buff[c] = (byte) chars[c];
-                      }
-
+                    while ((ret = in.read(buff, 0, BufferManager.BUFFER_SIZE)) != -1) {
                       out.write(AoservDaemonProtocol.NEXT);
                       out.writeShort(ret);
                       out.write(buff, 0, ret);
+                      ByteArrayOutputStream bout = capture[0];
+                      if (bout != null) {
+                        if (bout.size() + ret > PAGE_CACHE_MAX_PAGE_SIZE) {
+                          // Too big to cache
+                          capture[0] = null;
+                        } else {
+                          bout.write(buff, 0, ret);
+                        }
+                      }
                     }
                   } finally {
-                    BufferManager.release(chars, false);
+                    BufferManager.release(buff, false);
                   }
-                } finally {
-                  BufferManager.release(buff, false);
                 }
-              }
-            },
-            "/bin/su",
-            "-s",
-            Shell.BASH.toString(),
-            "-c",
-            runascgi + " '" + queryString + "'",
-            User.AWSTATS.toString()
-        );
+              },
+              "/bin/su",
+              "-s",
+              Shell.BASH.toString(),
+              "-c",
+              runascgi + " '" + queryString + "'",
+              User.AWSTATS.toString()
+          );
+          if (capture[0] != null && dataVersion != null) {
+            putCachedPage(cacheKey, dataVersion, capture[0].toByteArray());
+          }
+        }
       } else {
         throw new IOException("Unsupported queryString for awstats.pl: " + queryString);
       }
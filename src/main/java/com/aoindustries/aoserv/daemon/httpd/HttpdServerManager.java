@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2008-2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2024, 2025  AO Industries, Inc.
+ * Copyright (C) 2008-2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2024, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -62,13 +62,12 @@ import com.aoindustries.aoserv.client.web.tomcat.SharedTomcatSite;
 import com.aoindustries.aoserv.client.web.tomcat.Worker;
 import com.aoindustries.aoserv.daemon.AoservDaemon;
 import com.aoindustries.aoserv.daemon.AoservDaemonConfiguration;
-import com.aoindustries.aoserv.daemon.posix.linux.LinuxProcess;
 import com.aoindustries.aoserv.daemon.posix.linux.PackageManager;
+import com.aoindustries.aoserv.daemon.report.ProcScan;
 import com.aoindustries.aoserv.daemon.util.DaemonFileUtils;
 import com.aoindustries.selinux.SEManagePort;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.sql.SQLException;
@@ -4146,41 +4145,14 @@ public final class HttpdServerManager {
             // and have the correct ppid
             int count = 0;
             {
-              File procDir = new File("/proc");
-              String[] procList = procDir.list();
-              if (procList == null) {
-                throw new IOException("Not a directory? " + procDir);
-              }
-              for (String filename : procList) {
-                int flen = filename.length();
-                boolean allNum = true;
-                for (int d = 0; d < flen; d++) {
-                  char ch = filename.charAt(d);
-                  if (ch < '0' || ch > '9') {
-                    allNum = false;
-                    break;
-                  }
-                }
-                if (allNum) {
-                  try {
-                    int pid = Integer.parseInt(filename);
-                    LinuxProcess process = new LinuxProcess(pid);
-                    String[] cmdline = process.getCmdline();
-                    if (
-                        cmdline.length >= 1
-                            && "/usr/sbin/httpd".equals(cmdline[0])
-                    // Not on CentOS 5: && "-DFOREGROUND".equals(cmdline[cmdline.length - 1])
-                    ) {
-                      String statusPpid = process.getStatus("PPid");
-                      if (statusPpid != null && Integer.parseInt(statusPpid) == ppid) {
-                        count++;
-                      }
-                    }
-                  } catch (FileNotFoundException err) {
-                    if (logger.isLoggable(Level.FINE)) {
-                      logger.log(Level.FINE, "It is normal that this is thrown if the process has already closed", err);
-                    }
-                  }
+              ProcScan scan = ProcScan.getInstance();
+              for (int i = 0, size = scan.size(); i < size; i++) {
+                if (
+                    scan.getPpid(i) == ppid
+                        && "/usr/sbin/httpd".equals(scan.getCommand(i))
+                // Not on CentOS 5: && "-DFOREGROUND".equals(cmdline[cmdline.length - 1])
+                ) {
+                  count++;
                 }
               }
             }
@@ -25,6 +25,7 @@ package com.aoindustries.aoserv.daemon.iptables;
 
 import com.aoapps.collections.AoCollections;
 import com.aoapps.io.posix.PosixFile;
+import com.aoapps.lang.Throwables;
 import com.aoapps.lang.math.SafeMath;
 import com.aoindustries.aoserv.client.AoservConnector;
 import com.aoindustries.aoserv.client.account.Administrator;
@@ -42,11 +43,12 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -142,79 +144,55 @@ public final class IpReputationManager extends BuilderThread {
   }
 
   /**
-   * Orders hosts with worse reputation first.
+   * The number of reputation sets rebuilt concurrently: the minimum of four or half the cores on the server.
    */
-  private static final Comparator<Host> badHostComparator = (Host host1, Host host2) -> {
-    // Sort by effective reputation first
-    int rep1 = host1.getReputation();
-    int rep2 = host2.getReputation();
-    if (rep1 < rep2) {
-      return -1;
-    }
-    if (rep1 > rep2) {
-      return 1;
-    }
-    // Sort by IP next
-    int ip1 = host1.getHost();
-    int ip2 = host2.getHost();
-    if (ip1 < ip2) {
-      return -1;
-    }
-    if (ip1 > ip2) {
-      return 1;
-    }
-    return 0;
-  };
+  private static final int REBUILD_CONCURRENCY = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
 
   /**
-   * Orders networks with best reputation first.
+   * The four classes of hosts, based on each set's settings.
    */
-  private static final Comparator<Network> goodNetworkComparator = (Network network1, Network network2) -> {
-    // Sort by effective reputation first
-    int count1 = network1.getCounter();
-    int count2 = network2.getCounter();
-    if (count1 > count2) {
-      return -1;
-    }
-    if (count1 < count2) {
-      return 1;
-    }
-    // Sort by IP next
-    int ipNet1 = network1.getNetwork();
-    int ipNet2 = network2.getNetwork();
-    if (ipNet1 < ipNet2) {
-      return -1;
-    }
-    if (ipNet1 > ipNet2) {
-      return 1;
+  private static final int
+      DEFINITE_BAD = 0,
+      UNCERTAIN_BAD = 1,
+      UNCERTAIN_GOOD = 2,
+      DEFINITE_GOOD = 3,
+      NUM_CLASSES = 4;
+
+  private static int classify(short rep, short minUncertainBad, short maxUncertainGood) {
+    if (rep < minUncertainBad) {
+      return DEFINITE_BAD;
+    } else if (rep < 0) {
+      return UNCERTAIN_BAD;
+    } else if (rep > maxUncertainGood) {
+      return DEFINITE_GOOD;
+    } else if (rep >= 0) {
+      return UNCERTAIN_GOOD;
+    } else {
+      throw new AssertionError("rep=" + rep);
     }
-    return 0;
-  };
+  }
 
   /**
-   * Orders hosts with best reputation first.
+   * Packs an order and an IP address into a key that sorts by order then by IP.
+   * The IP is biased so that it sorts as a signed integer within the unsigned low bits.
+   *
+   * @param  order  the primary order, which must fit in a signed 32-bit integer
    */
-  private static final Comparator<Host> goodHostComparator = (Host host1, Host host2) -> {
-    // Sort by effective reputation first
-    int rep1 = host1.getReputation();
-    int rep2 = host2.getReputation();
-    if (rep1 > rep2) {
-      return -1;
-    }
-    if (rep1 < rep2) {
-      return 1;
-    }
-    // Sort by IP next
-    int ip1 = host1.getHost();
-    int ip2 = host2.getHost();
-    if (ip1 < ip2) {
-      return -1;
-    }
-    if (ip1 > ip2) {
-      return 1;
+  static long getSortKey(long order, int ip) {
+    return (order << 32) | ((ip ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Sorts the keys and extracts their IP addresses, in order.
+   */
+  static int[] getSortedIps(long[] sortKeys) {
+    Arrays.sort(sortKeys);
+    int[] ips = new int[sortKeys.length];
+    for (int i = 0; i < sortKeys.length; i++) {
+      ips[i] = ((int) sortKeys[i]) ^ Integer.MIN_VALUE;
     }
-    return 0;
-  };
+    return ips;
+  }
 
   /**
    * See ip_reputation_sets-create.sql for set name encoding
@@ -222,21 +200,14 @@ public final class IpReputationManager extends BuilderThread {
    * @see  IpReputationManager#synchronizeIpset
    */
   private static void synchronizeHostIpset(
-      java.util.Set<Host> hosts,
+      int[] hosts,
       Set.ConfidenceType confidence,
       Set.ReputationType reputationType,
       String identifier,
       PosixFile setDir
   ) throws IOException {
-    java.util.Set<Integer> entries = AoCollections.newLinkedHashSet(Math.min(Ipset.MAX_IPSET_SIZE + 1, hosts.size()));
-    for (Host host : hosts) {
-      entries.add(host.getHost());
-      if (entries.size() > Ipset.MAX_IPSET_SIZE) {
-        break;
-      }
-    }
     Ipset.synchronize(
-        entries,
+        hosts,
         Ipset.HOST_NETWORK_PREFIX,
         Ipset.NamespacePrefix.R.name() + reputationType.toChar() + confidence.toChar() + '_' + identifier,
         setDir
@@ -249,26 +220,111 @@ public final class IpReputationManager extends BuilderThread {
    * @see  IpReputationManager#synchronizeIpset
    */
   private static void synchronizeNetworkIpset(
-      java.util.Set<Network> networks,
+      int[] networks,
       short networkPrefix,
       String identifier,
       PosixFile setDir
   ) throws IOException {
-    java.util.Set<Integer> entries = AoCollections.newLinkedHashSet(Math.min(Ipset.MAX_IPSET_SIZE + 1, networks.size()));
-    for (Network network : networks) {
-      entries.add(network.getNetwork());
-      if (entries.size() > Ipset.MAX_IPSET_SIZE) {
-        break;
-      }
-    }
     Ipset.synchronize(
-        entries,
+        networks,
         networkPrefix,
         Ipset.NamespacePrefix.R.name() + Set.ReputationType.GOOD.toChar() + "N_" + identifier,
         setDir
     );
   }
 
+  /**
+   * Rebuilds the ipsets for a single reputation set.
+   */
+  private static void rebuildSet(Set set, PosixFile ipreputationDir) throws IOException, SQLException {
+    final long startTime = System.currentTimeMillis();
+
+    // Set settings
+    final String identifier       = set.getIdentifier();
+    final short maxUncertainGood  = set.getMaxUncertainReputation();
+    final short minUncertainBad   = SafeMath.castShort(-maxUncertainGood);
+
+    // Create the set directory if missing
+    PosixFile setDir = new PosixFile(ipreputationDir, identifier, true);
+    if (!setDir.getStat().exists()) {
+      setDir.mkdir(false, 0700);
+    }
+
+    // Split the IP addresses into four classes based on the set's settings,
+    // counting first to allocate exact-sized arrays of sort keys.
+    final Collection<Host> hosts = set.getHosts();
+    final int[] counts = new int[NUM_CLASSES];
+    for (Host host : hosts) {
+      counts[classify(host.getReputation(), minUncertainBad, maxUncertainGood)]++;
+    }
+    final long[][] sortKeys = new long[NUM_CLASSES][];
+    for (int i = 0; i < NUM_CLASSES; i++) {
+      sortKeys[i] = new long[counts[i]];
+      counts[i] = 0;
+    }
+    for (Host host : hosts) {
+      short rep = host.getReputation();
+      int hostClass = classify(rep, minUncertainBad, maxUncertainGood);
+      // Bad hosts are ordered worst reputation first, good hosts best reputation first
+      sortKeys[hostClass][counts[hostClass]++] = getSortKey(
+          hostClass == DEFINITE_BAD || hostClass == UNCERTAIN_BAD ? rep : -rep,
+          host.getHost()
+      );
+    }
+
+    // Sort the networks by reputation, best first
+    final Collection<Network> networks = set.getNetworks();
+    final long[] networkSortKeys = new long[networks.size()];
+    int networkIndex = 0;
+    for (Network network : networks) {
+      networkSortKeys[networkIndex++] = getSortKey(-(long) network.getCounter(), network.getNetwork());
+    }
+    assert networkIndex == networkSortKeys.length;
+
+    // Synchronize both the in-kernel set as well as the on-disk representations
+    synchronizeHostIpset(
+        getSortedIps(sortKeys[DEFINITE_BAD]),
+        Set.ConfidenceType.DEFINITE,
+        Set.ReputationType.BAD,
+        identifier,
+        setDir
+    );
+    synchronizeHostIpset(
+        getSortedIps(sortKeys[UNCERTAIN_BAD]),
+        Set.ConfidenceType.UNCERTAIN,
+        Set.ReputationType.BAD,
+        identifier,
+        setDir
+    );
+    synchronizeHostIpset(
+        getSortedIps(sortKeys[UNCERTAIN_GOOD]),
+        Set.ConfidenceType.UNCERTAIN,
+        Set.ReputationType.GOOD,
+        identifier,
+        setDir
+    );
+    synchronizeHostIpset(
+        getSortedIps(sortKeys[DEFINITE_GOOD]),
+        Set.ConfidenceType.DEFINITE,
+        Set.ReputationType.GOOD,
+        identifier,
+        setDir
+    );
+    synchronizeNetworkIpset(
+        getSortedIps(networkSortKeys),
+        set.getNetworkPrefix(),
+        identifier,
+        setDir
+    );
+
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine(
+          "Rebuilt set \"" + identifier + "\" with " + hosts.size() + " hosts and " + networks.size()
+              + " networks in " + (System.currentTimeMillis() - startTime) + " ms"
+      );
+    }
+  }
+
   private static final Object rebuildLock = new Object();
 
   @Override
@@ -296,81 +352,42 @@ public final class IpReputationManager extends BuilderThread {
         final java.util.Set<String> setIdentifiers = AoCollections.newHashSet(sets.size());
 
         for (Set set : sets) {
-          // Set settings
-          final String identifier       = set.getIdentifier();
-          final short maxUncertainGood  = set.getMaxUncertainReputation();
-          final short minUncertainBad   = SafeMath.castShort(-maxUncertainGood);
-
           // Make sure to not remove the directory
-          setIdentifiers.add(identifier);
-
-          // Create the set directory if missing
-          PosixFile setDir = new PosixFile(ipreputationDir, identifier, true);
-          if (!setDir.getStat().exists()) {
-            setDir.mkdir(false, 0700);
-          }
+          setIdentifiers.add(set.getIdentifier());
+        }
 
-          // TODO: Use concurrency equal to minimum of four or half the cores on the server
-
-          // Split the IP addresses into four classes based on the set's settings.
-          SortedSet<Host>    definiteBadHosts   = new TreeSet<>(badHostComparator);
-          SortedSet<Host>    uncertainBadHosts  = new TreeSet<>(badHostComparator);
-          SortedSet<Host>    uncertainGoodHosts = new TreeSet<>(goodHostComparator);
-          SortedSet<Host>    definiteGoodHosts  = new TreeSet<>(goodHostComparator);
-          for (Host host : set.getHosts()) {
-            short rep = host.getReputation();
-            if (rep < minUncertainBad) {
-              definiteBadHosts.add(host);
-            } else if (rep < 0) {
-              uncertainBadHosts.add(host);
-            } else if (rep > maxUncertainGood) {
-              definiteGoodHosts.add(host);
-            } else if (rep >= 0) {
-              uncertainGoodHosts.add(host);
-            } else {
-              throw new AssertionError("rep=" + rep);
+        // Independent sets are rebuilt concurrently
+        final List<Set> setList = new ArrayList<>(sets);
+        final int numWorkers = Math.min(REBUILD_CONCURRENCY, setList.size());
+        final AtomicInteger nextSet = new AtomicInteger();
+        List<Future<Throwable>> workers = new ArrayList<>(numWorkers);
+        for (int w = 0; w < numWorkers; w++) {
+          workers.add(AoservDaemon.executorService.submit(() -> {
+            Throwable t0 = null;
+            int next;
+            while ((next = nextSet.getAndIncrement()) < setList.size()) {
+              try {
+                rebuildSet(setList.get(next), ipreputationDir);
+              } catch (Throwable t) {
+                t0 = Throwables.addSuppressed(t0, t);
+              }
+            }
+            return t0;
+          }));
+        }
+        Throwable t0 = null;
+        for (Future<Throwable> worker : workers) {
+          try {
+            Throwable t = worker.get();
+            if (t != null) {
+              t0 = Throwables.addSuppressed(t0, t);
             }
+          } catch (ExecutionException e) {
+            t0 = Throwables.addSuppressed(t0, e.getCause());
           }
-
-          // Sort the networks by reputation
-          SortedSet<Network> goodNetworks = new TreeSet<>(goodNetworkComparator);
-          goodNetworks.addAll(set.getNetworks());
-
-          // Synchronize both the in-kernel set as well as the on-disk representations
-          synchronizeHostIpset(
-              definiteBadHosts,
-              Set.ConfidenceType.DEFINITE,
-              Set.ReputationType.BAD,
-              identifier,
-              setDir
-          );
-          synchronizeHostIpset(
-              uncertainBadHosts,
-              Set.ConfidenceType.UNCERTAIN,
-              Set.ReputationType.BAD,
-              identifier,
-              setDir
-          );
-          synchronizeHostIpset(
-              uncertainGoodHosts,
-              Set.ConfidenceType.UNCERTAIN,
-              Set.ReputationType.GOOD,
-              identifier,
-              setDir
-          );
-          synchronizeHostIpset(
-              definiteGoodHosts,
-              Set.ConfidenceType.DEFINITE,
-              Set.ReputationType.GOOD,
-              identifier,
-              setDir
-          );
-          synchronizeNetworkIpset(
-              goodNetworks,
-              set.getNetworkPrefix(),
-              identifier,
-              setDir
-          );
+        }
+        if (t0 != null) {
+          throw Throwables.wrap(t0, IOException.class, IOException::new);
         }
 
         // TODO: Delete any sets that have reputation prefixes from the kernel
@@ -391,6 +408,11 @@ public final class IpReputationManager extends BuilderThread {
         }
       }
       return true;
+    } catch (InterruptedException e) {
+      logger.log(Level.WARNING, null, e);
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+      return false;
     } catch (Throwable t) {
       logger.log(Level.SEVERE, null, t);
       return false;
@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2012, 2013, 2017, 2018, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2012, 2013, 2017, 2018, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,21 +23,27 @@
 
 package com.aoindustries.aoserv.daemon.iptables;
 
-import com.aoapps.collections.AoCollections;
 import com.aoapps.io.posix.PosixFile;
 import com.aoapps.lang.ProcessResult;
+import com.aoapps.lang.io.IoUtils;
+import com.aoapps.lang.io.NullOutputStream;
 import com.aoindustries.aoserv.client.net.IpAddress;
+import com.aoindustries.aoserv.daemon.AoservDaemon;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -81,7 +87,13 @@ public final class Ipset {
      *
      * @see  Set
      */
-    R
+    R,
+
+    /**
+     * Used by the temporary set built while synchronizing, which is then swapped into place.
+     * The temporary set name replaces the prefix of the set being synchronized.
+     */
+    T
   }
 
   // /**
@@ -155,45 +167,88 @@ public final class Ipset {
   }
 
   /**
-   * Calls <code>ipset -D</code>.
+   * Calls <code>ipset -X</code>.
+   *
+   * @param  missingOk  when true, a missing set is ignored, otherwise will throw an exception
    */
-  public static void delete(String setName, int entry) throws IOException {
+  public static void destroy(String setName, boolean missingOk) throws IOException {
     ProcessResult result = ProcessResult.exec(
         new String[]{
             IPSET,
-            "-D",
-            setName,
-            IpAddress.getIpAddressForInt(entry)
+            "-X",
+            setName
         },
         CHARSET
     );
     if (result.getExitVal() != 0) {
-      throw new IOException("Non-zero exit value from " + IPSET + " -D: exitVal=" + result.getExitVal() + ", stderr=" + result.getStderr().trim());
+      String stderr = result.getStderr().trim();
+      if (!missingOk || !stderr.endsWith("Unknown set")) {
+        throw new IOException("Non-zero exit value from " + IPSET + " -X: exitVal=" + result.getExitVal() + ", stderr=" + stderr);
+      }
     }
   }
 
   /**
-   * Calls <code>ipset -A</code>.
+   * Calls <code>ipset -W</code>, atomically exchanging the contents of two sets of the same type.
+   * Any iptables rules referencing the sets by name are unaffected.
    */
-  public static void add(String setName, int entry) throws IOException {
+  public static void swap(String fromSetName, String toSetName) throws IOException {
     ProcessResult result = ProcessResult.exec(
         new String[]{
             IPSET,
-            "-A",
-            setName,
-            IpAddress.getIpAddressForInt(entry)
+            "-W",
+            fromSetName,
+            toSetName
         },
         CHARSET
     );
     if (result.getExitVal() != 0) {
-      throw new IOException("Non-zero exit value from " + IPSET + " -A: exitVal=" + result.getExitVal() + ", stderr=" + result.getStderr().trim());
+      throw new IOException("Non-zero exit value from " + IPSET + " -W: exitVal=" + result.getExitVal() + ", stderr=" + result.getStderr().trim());
     }
   }
 
   /**
-   * Parses an ipset save file, returning the mutable set of IP addresses in order dumped.
+   * Calls <code>ipset -R</code>, creating a new set and adding all of its entries in a single process.
+   * The set must not already exist.
+   *
+   * @param  networkPrefix  the network prefix or <code>HOST_NETWORK_PREFIX</code> for individual hosts
+   * @param  numEntries     the number of entries used from the beginning of <code>entries</code>
    */
-  public static void parse(String save, Set<Integer> entries) throws IOException {
+  public static void restore(String setName, short networkPrefix, int[] entries, int numEntries) throws IOException {
+    AoservDaemon.execRun(
+        stdin -> {
+          Writer out = new BufferedWriter(new OutputStreamWriter(stdin, CHARSET));
+          out.write("-N ");
+          out.write(setName);
+          out.write(' ');
+          out.write(SetType.iphash.name());
+          if (networkPrefix != HOST_NETWORK_PREFIX) {
+            out.write(" --netmask ");
+            out.write(Short.toString(networkPrefix));
+          }
+          out.write('\n');
+          for (int i = 0; i < numEntries; i++) {
+            out.write("-A ");
+            out.write(setName);
+            out.write(' ');
+            out.write(IpAddress.getIpAddressForInt(entries[i]));
+            out.write('\n');
+          }
+          out.write("COMMIT\n");
+          out.flush();
+        },
+        stdout -> IoUtils.copy(stdout, NullOutputStream.getInstance()), // Do nothing with the output
+        IPSET,
+        "-R"
+    );
+  }
+
+  /**
+   * Parses an ipset save file, returning the IP addresses in order dumped.
+   */
+  public static int[] parse(String save) throws IOException {
+    int[] entries = new int[16];
+    int numEntries = 0;
     try (BufferedReader in = new BufferedReader(new StringReader(save))) {
       String line;
       while ((line = in.readLine()) != null) {
@@ -203,31 +258,86 @@ public final class Ipset {
           if (spacePos == -1) {
             throw new IOException("Unable to find second space");
           }
-          entries.add(IpAddress. getIntForIpAddress(line.substring(spacePos + 1)));
+          if (numEntries == entries.length) {
+            entries = Arrays.copyOf(entries, numEntries << 1);
+          }
+          entries[numEntries++] = IpAddress.getIntForIpAddress(line.substring(spacePos + 1));
         }
       }
     }
+    return Arrays.copyOf(entries, numEntries);
+  }
+
+  /**
+   * The number of milliseconds the cached contents of a set are trusted before the set is dumped
+   * again, to repair changes made outside of this class.
+   */
+  private static final long CACHE_REVALIDATE_INTERVAL = 5L * 60 * 1000;
+
+  /**
+   * The in-kernel state of a set, as of its last dump.
+   */
+  private static class CachedSet {
+    /**
+     * The distinct entries, in address order.
+     */
+    private final int[] entries;
+    /**
+     * The dump the entries were parsed from.
+     */
+    private final String save;
+    /**
+     * The time the set was dumped.
+     */
+    private final long verifiedTime;
+
+    private CachedSet(int[] entries, String save, long verifiedTime) {
+      this.entries = entries;
+      this.save = save;
+      this.verifiedTime = verifiedTime;
+    }
+  }
+
+  private static final Map<String, CachedSet> cachedSets = new ConcurrentHashMap<>();
+
+  /**
+   * Sorts entries in-place and removes any duplicates.
+   *
+   * @return  the number of distinct entries at the beginning of the array
+   */
+  static int sortDistinct(int[] entries) {
+    Arrays.sort(entries);
+    int numDistinct = 0;
+    for (int i = 0; i < entries.length; i++) {
+      if (i == 0 || entries[i] != entries[numDistinct - 1]) {
+        entries[numDistinct++] = entries[i];
+      }
+    }
+    return numDistinct;
   }
 
   /**
    * Synchronizes a single set to the expected entries, both in-kernel and on-disk versions.
    * Creates set in kernel if missing.
-   * Adds/removes any necessary changes.
+   * When modified, the complete set is restored into a temporary set in a single process then swapped into place.
    * Updates on-disk only if missing or set modified.
+   * Between passes, the in-kernel contents are cached and trusted without dumping the set.
+   * The set is dumped again after any failure and at least every {@link #CACHE_REVALIDATE_INTERVAL},
+   * so changes made outside of this class are repaired.
    *
-   * @param  entries        the ip or network entries, only the first <code>MAX_IPSET_SIZE</code> entries will be used
+   * @param  entries        the ip or network entries in priority order, only the first <code>MAX_IPSET_SIZE</code> entries will be used
    * @param  networkPrefix  the network prefix or <code>HOST_NETWORK_PREFIX</code> for individual hosts
    * @param  setName        the set name used both in-kernel and on-disk
    * @param  setDir         the directory that stores the on-disk version
    */
   public static void synchronize(
-      Set<Integer> entries,
+      int[] entries,
       short networkPrefix,
       String setName,
       PosixFile setDir
   ) throws IOException {
-    Set<Integer> unusedEntries;
-    if (entries.size() > MAX_IPSET_SIZE) {
+    int numEntries = entries.length;
+    if (numEntries > MAX_IPSET_SIZE) {
       logger.log(
           Level.WARNING,
           "Only the first {0} entries used for ipset \"{1}\"",
@@ -236,67 +346,85 @@ public final class Ipset {
               setName
           }
       );
-      unusedEntries = AoCollections.newHashSet(entries.size() - MAX_IPSET_SIZE);
-      int count = 0;
-      for (Integer entry : entries) {
-        if (count >= MAX_IPSET_SIZE) {
-          unusedEntries.add(entry);
-        } else {
-          count++;
-        }
-      }
-    } else {
-      unusedEntries = Collections.emptySet();
+      numEntries = MAX_IPSET_SIZE;
     }
 
-    // TODO: Cache values between passes for efficiency
+    // The expected entries in address order
+    int[] expectedEntries = Arrays.copyOf(entries, numEntries);
+    expectedEntries = Arrays.copyOf(expectedEntries, sortDistinct(expectedEntries));
 
-    // Dump current set from kernel
-    String save = save(setName, true);
-    if (save == null) {
-      // Create new set
-      if (networkPrefix == HOST_NETWORK_PREFIX) {
-        create(setName, SetType.iphash);
+    try {
+      // Will be set to true when re-dump is required
+      boolean modified;
+
+      String save;
+      CachedSet cached = cachedSets.get(setName);
+      final long currentTime = System.currentTimeMillis();
+      long age = cached == null ? -1 : (currentTime - cached.verifiedTime);
+      if (age >= 0 && age < CACHE_REVALIDATE_INTERVAL) {
+        // Trust the cached contents between passes, without dumping the set
+        save = cached.save;
+        modified = !Arrays.equals(cached.entries, expectedEntries);
+        if (modified) {
+          replace(setName, networkPrefix, expectedEntries, expectedEntries.length);
+        }
       } else {
-        create(setName, SetType.iphash, "--netmask", Short.toString(networkPrefix));
+        // Dump current set from kernel
+        save = save(setName, true);
+        if (save == null) {
+          // Create and populate new set
+          restore(setName, networkPrefix, expectedEntries, expectedEntries.length);
+          modified = true;
+        } else {
+          // Parse current set, comparing to the expected entries in address order
+          int[] existingEntries = parse(save);
+          int numExisting = sortDistinct(existingEntries);
+          modified = !Arrays.equals(existingEntries, 0, numExisting, expectedEntries, 0, expectedEntries.length);
+          if (modified) {
+            replace(setName, networkPrefix, expectedEntries, expectedEntries.length);
+          } else {
+            cached = new CachedSet(Arrays.copyOf(existingEntries, numExisting), save, currentTime);
+          }
+        }
       }
 
-      // Dump new set
-      save = save(setName, false);
-    }
-
-    // Will be set to true when re-dump is required
-    boolean modified = false;
-
-    // Parse current set, deleting any that should no longer exist, flagging as modified
-    Set<Integer> existingEntries = AoCollections.newLinkedHashSet(
-        // Leave room for 25% growth before any rehash
-        (entries.size() * 5) >> 2
-    );
-    parse(save, existingEntries);
-    Iterator<Integer> iter = existingEntries.iterator();
-    while (iter.hasNext()) {
-      Integer existing = iter.next();
-      if (!entries.contains(existing) || unusedEntries.contains(existing)) {
-        delete(setName, existing);
-        iter.remove();
-        modified = true;
+      // Re-list if modified to get on-disk format
+      if (modified) {
+        save = save(setName, false);
+        int[] newEntries = parse(save);
+        cached = new CachedSet(Arrays.copyOf(newEntries, sortDistinct(newEntries)), save, currentTime);
       }
-    }
+      cachedSets.put(setName, cached);
 
-    // Add any missing, flagging as modified
-    for (Integer entry : entries) {
-      if (!unusedEntries.contains(entry) && !existingEntries.contains(entry)) {
-        add(setName, entry);
-        modified = true;
-      }
+      writeSaveFile(save, setName, setDir);
+    } catch (Throwable t) {
+      // Any failure may indicate the set was modified externally, dump on the next pass
+      cachedSets.remove(setName);
+      throw t;
     }
+  }
 
-    // Re-list if modified to get on-disk format
-    if (modified) {
-      save = save(setName, false);
+  /**
+   * Builds the new contents in a temporary set, then swaps into place atomically.
+   * This replaces one process per added or removed entry.
+   */
+  private static void replace(String setName, short networkPrefix, int[] entries, int numEntries) throws IOException {
+    String tempSetName = NamespacePrefix.T.name() + setName.substring(1);
+    // Remove any temporary set left by an interrupted pass
+    destroy(tempSetName, true);
+    try {
+      restore(tempSetName, networkPrefix, entries, numEntries);
+      swap(tempSetName, setName);
+    } finally {
+      // The set may be missing when restore failed before creating it
+      destroy(tempSetName, true);
     }
+  }
 
+  /**
+   * Updates the on-disk version of a set if missing or changed.
+   */
+  private static void writeSaveFile(String save, String setName, PosixFile setDir) throws IOException {
     // Add-in comment line about automatically generated
     save = SAVE_COMMENT + save;
 
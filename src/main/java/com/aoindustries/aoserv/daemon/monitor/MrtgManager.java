@@ -52,11 +52,15 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -780,84 +784,155 @@ public final class MrtgManager extends BuilderThread {
     }
   }
 
+  private static final File procSelfMountinfo = new File("/proc/self/mountinfo");
+
+  private static final Object dfDevicesLock = new Object();
+  private static byte[] dfDevicesMountinfo;
+  private static List<String> dfDevices;
+
   /**
    * Gets the list of devices for df commands.  When in a failover state, returns empty list.
+   *
+   * <p>The devices are read from {@code /proc/self/mountinfo}, with each loop device replaced by its backing file.
+   * The list is only rebuilt when the mount table has changed since the last call.</p>
+   *
+   * <p>Per-filesystem usage is still collected by {@code mrtg_df} and the filesystems report by
+   * {@code filesystemscsv}.  Replacing these with {@link java.nio.file.FileStore} statistics was
+   * declined, since the report includes ext2/3/4 superblock details that {@link java.nio.file.FileStore}
+   * does not provide.</p>
    */
-  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
   private static List<String> getDfDevices() throws IOException, SQLException {
     Server thisServer = AoservDaemon.getThisServer();
     if (thisServer.getFailoverServer() != null) {
       return Collections.emptyList();
     }
-    String listPartitionsCommand = "/opt/aoserv-daemon/bin/list_partitions";
-
-    List<String> devices = new ArrayList<>();
-    AoservDaemon.execRun(
-        stdout -> {
-          try (BufferedReader in = new BufferedReader(new InputStreamReader(stdout))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-              if (devices.contains(line)) {
-                logger.log(Level.WARNING, null, new Throwable("Warning: duplicate device from list_partitions: " + line));
-              } else {
-                devices.add(line);
-              }
+    byte[] mountinfo = Files.readAllBytes(procSelfMountinfo.toPath());
+    synchronized (dfDevicesLock) {
+      if (dfDevices == null || !Arrays.equals(mountinfo, dfDevicesMountinfo)) {
+        dfDevices = parseDfDevices(mountinfo);
+        dfDevicesMountinfo = mountinfo;
+      }
+      return dfDevices;
+    }
+  }
+
+  /**
+   * Parses the mounted block devices from the contents of {@code /proc/self/mountinfo}.
+   * Each device is only listed once, even when mounted in multiple places.
+   * Devices without a {@linkplain #getSafeName(java.lang.String) safe name} are skipped with a warning.
+   *
+   * @return  the unmodifiable, sorted list of devices
+   */
+  static List<String> parseDfDevices(byte[] mountinfo) throws IOException {
+    SortedSet<String> devices = new TreeSet<>();
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(mountinfo), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        // The mount source follows the separator and filesystem type
+        int separator = line.indexOf(" - ");
+        if (separator == -1) {
+          throw new IOException("Separator not found in mountinfo line: " + line);
+        }
+        List<String> fields = Strings.split(line.substring(separator + 3), ' ');
+        if (fields.size() < 2) {
+          throw new IOException("Mount source not found in mountinfo line: " + line);
+        }
+        String source = unescapeMountinfo(fields.get(1));
+        if (source.startsWith("/dev/")) {
+          if (source.startsWith("/dev/loop")) {
+            // Use the backing file of loop devices, such as encrypted images
+            File backingFile = new File("/sys/block/" + source.substring("/dev/".length()) + "/loop/backing_file");
+            if (backingFile.exists()) {
+              source = new String(Files.readAllBytes(backingFile.toPath()), StandardCharsets.UTF_8).trim();
+            }
+          }
+          if (getSafeName(source) != null) {
+            devices.add(source);
+          } else if (logger.isLoggable(Level.WARNING)) {
+            logger.log(Level.WARNING, "Skipping device without a safe name: " + source);
+          }
+        }
+      }
+    }
+    return Collections.unmodifiableList(new ArrayList<>(devices));
+  }
+
+  /**
+   * Decodes the octal escapes used for spaces, tabs, newlines, and backslashes in {@code /proc/self/mountinfo}.
+   */
+  static String unescapeMountinfo(String value) {
+    if (value.indexOf('\\') == -1) {
+      return value;
+    }
+    StringBuilder sb = new StringBuilder(value.length());
+    for (int i = 0, len = value.length(); i < len; i++) {
+      char ch = value.charAt(i);
+      if (ch == '\\' && i + 3 < len) {
+        sb.append((char) Integer.parseInt(value.substring(i + 1, i + 4), 8));
+        i += 3;
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Gets the name used for a device in MRTG targets.
+   *
+   * @return  the name, containing only a-z, A-Z, 0-9 or _, or {@code null} when the device has no safe name
+   */
+  static String getSafeName(String device) {
+    switch (device) {
+      case "/var/lib/pgsql.aes256.img":
+        return "pgsqlaes256";
+      case "/www.aes256.img":
+        return "wwwaes256";
+      case "/ao.aes256.img":
+        return "aoaes256";
+      case "/ao.copy.aes256.img":
+        return "aocopyaes256";
+      case "/dev/mapper/ao":
+        return "aoluks";
+      default:
+        {
+          String safeName;
+          if (device.startsWith("/dev/mapper/")) {
+            safeName = "mapper_" + device.substring(12).replace('-', '_');
+          } else if (device.startsWith("/dev/")) {
+            safeName = device.substring(5);
+          } else {
+            safeName = device;
+          }
+          // All characters should now be a-z, A-Z, 0-9 or _
+          if (safeName.isEmpty()) {
+            return null;
+          }
+          for (int c = 0; c < safeName.length(); c++) {
+            char ch = safeName.charAt(c);
+            if (
+                (ch < 'a' || ch > 'z')
+                    && (ch < 'A' || ch > 'Z')
+                    && (ch < '0' || ch > '9')
+                    && ch != '_'
+            ) {
+              return null;
             }
           }
-        },
-        listPartitionsCommand
-    );
-    Collections.sort(devices);
-    return devices;
+          return safeName;
+        }
+    }
   }
 
-  @SuppressWarnings("AssignmentToForLoopParameter")
   private static List<String> getSafeNames(List<String> devices) throws IOException {
     if (devices.isEmpty()) {
       return Collections.emptyList();
     }
     List<String> safeNames = new ArrayList<>(devices.size());
     for (String device : devices) {
-      final String safeName;
-      switch (device) {
-        case "/var/lib/pgsql.aes256.img":
-          safeName = "pgsqlaes256";
-          break;
-        case "/www.aes256.img":
-          safeName = "wwwaes256";
-          break;
-        case "/ao.aes256.img":
-          safeName = "aoaes256";
-          break;
-        case "/ao.copy.aes256.img":
-          safeName = "aocopyaes256";
-          break;
-        case "/dev/mapper/ao":
-          safeName = "aoluks";
-          break;
-        default:
-          {
-            if (device.startsWith("/dev/mapper/")) {
-              device = "mapper_" + device.substring(12).replace('-', '_');
-            } else if (device.startsWith("/dev/")) {
-              device = device.substring(5);
-            } // All characters should now be a-z, A-Z, 0-9 or _
-            if (device.isEmpty()) {
-              throw new IOException("Empty device name: " + device);
-            }
-            for (int c = 0; c < device.length(); c++) {
-              char ch = device.charAt(c);
-              if (
-                  (ch < 'a' || ch > 'z')
-                      && (ch < 'A' || ch > 'Z')
-                      && (ch < '0' || ch > '9')
-                      && ch != '_'
-              ) {
-                throw new IOException("Invalid character in device.  ch=" + ch + ", device=" + device);
-              }
-            }
-            safeName = device;
-          }
+      String safeName = getSafeName(device);
+      if (safeName == null) {
+        throw new IOException("Invalid device name: " + device);
       }
       safeNames.add(safeName);
     }
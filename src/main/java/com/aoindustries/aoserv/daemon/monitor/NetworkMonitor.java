@@ -37,6 +37,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,50 +63,155 @@ public final class NetworkMonitor {
   private static final Map<String, NetworkMonitor> inMonitors = new LinkedHashMap<>();
   private static final Map<String, NetworkMonitor> outMonitors = new LinkedHashMap<>();
 
+  /**
+   * The number of seconds of history kept by {@link #main(java.lang.String[])} when a network
+   * does not configure more.
+   */
+  private static final int MAIN_HISTORY_SECONDS = 15 * 60;
+
+  /**
+   * The number of milliseconds between the top talkers printed by {@link #main(java.lang.String[])}.
+   */
+  private static final long MAIN_PRINT_INTERVAL = 10000;
+
   public static void start() {
     if (AoservDaemonConfiguration.isManagerEnabled(NetworkMonitor.class)) {
-      for (AoservDaemonConfiguration.NetworkMonitorConfiguration config : AoservDaemonConfiguration.getNetworkMonitors().values()) {
-        final String networkName = config.getName();
-        synchronized (System.out) {
-          if (!inMonitors.containsKey(networkName)) {
-            System.out.print("Starting NetworkMonitor(" + networkName + ", in): ");
-            NetworkMonitor monitor = new NetworkMonitor(
-                config.getDevice(),
-                "in",
-                config.getNetworkRanges(),
-                config.getInNetworkDirection(),
-                config.getInCountDirection(),
-                config.getNullRouteFifoErrorRate(),
-                config.getNullRouteFifoErrorRateMinPps(),
-                config.getNullRoutePacketRate(),
-                config.getNullRouteBitRate()
-            );
-            inMonitors.put(networkName, monitor);
-            monitor.startThread();
-            System.out.println("Done");
-          }
-          if (!outMonitors.containsKey(networkName)) {
-            System.out.print("Starting NetworkMonitor(" + networkName + ", out): ");
-            NetworkMonitor monitor = new NetworkMonitor(
-                config.getDevice(),
-                "out",
-                config.getNetworkRanges(),
-                config.getOutNetworkDirection(),
-                config.getOutCountDirection(),
-                null, // Null routes only done on incoming traffic
-                null, // Null routes only done on incoming traffic
-                null, // Null routes only done on incoming traffic
-                null  // Null routes only done on incoming traffic
-            );
-            outMonitors.put(networkName, monitor);
-            monitor.startThread();
-            System.out.println("Done");
-          }
+      start(true, 0);
+    }
+  }
+
+  /**
+   * Starts the monitors for all configured networks.
+   *
+   * @param  nullRoutes         when {@code false}, the monitors only record history and never add null routes
+   * @param  minHistorySeconds  the minimum number of seconds of history to keep, used when a network configures less
+   */
+  private static void start(boolean nullRoutes, int minHistorySeconds) {
+    for (AoservDaemonConfiguration.NetworkMonitorConfiguration config : AoservDaemonConfiguration.getNetworkMonitors().values()) {
+      final String networkName = config.getName();
+      final int historySeconds = Math.max(config.getHistorySeconds(), minHistorySeconds);
+      synchronized (System.out) {
+        if (!inMonitors.containsKey(networkName)) {
+          System.out.print("Starting NetworkMonitor(" + networkName + ", in): ");
+          NetworkMonitor monitor = new NetworkMonitor(
+              config.getDevice(),
+              "in",
+              config.getNetworkRanges(),
+              config.getInNetworkDirection(),
+              config.getInCountDirection(),
+              nullRoutes ? config.getNullRouteFifoErrorRate() : null,
+              nullRoutes ? config.getNullRouteFifoErrorRateMinPps() : null,
+              nullRoutes ? config.getNullRoutePacketRate() : null,
+              nullRoutes ? config.getNullRouteBitRate() : null,
+              historySeconds
+          );
+          inMonitors.put(networkName, monitor);
+          monitor.startThread();
+          System.out.println("Done");
+        }
+        if (!outMonitors.containsKey(networkName)) {
+          System.out.print("Starting NetworkMonitor(" + networkName + ", out): ");
+          NetworkMonitor monitor = new NetworkMonitor(
+              config.getDevice(),
+              "out",
+              config.getNetworkRanges(),
+              config.getOutNetworkDirection(),
+              config.getOutCountDirection(),
+              null, // Null routes only done on incoming traffic
+              null, // Null routes only done on incoming traffic
+              null, // Null routes only done on incoming traffic
+              null, // Null routes only done on incoming traffic
+              historySeconds
+          );
+          outMonitors.put(networkName, monitor);
+          monitor.startThread();
+          System.out.println("Done");
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the traffic history for the given network and direction.
+   *
+   * @param  direction  either <code>"in"</code> or <code>"out"</code>
+   *
+   * @return  the history or {@code null} when the network is not monitored, history is disabled,
+   *          or no records have been received
+   */
+  public static TrafficHistory getTrafficHistory(String networkName, String direction) {
+    NetworkMonitor monitor;
+    synchronized (System.out) {
+      if ("in".equals(direction)) {
+        monitor = inMonitors.get(networkName);
+      } else if ("out".equals(direction)) {
+        monitor = outMonitors.get(networkName);
+      } else {
+        throw new IllegalArgumentException("Unexpected direction: " + direction);
+      }
+    }
+    return monitor == null ? null : monitor.history;
+  }
+
+  private static void printTopTalkers(String networkName, String direction, int seconds, int limit, PrintStream out) {
+    TrafficHistory h = getTrafficHistory(networkName, direction);
+    if (h != null) {
+      for (boolean byBytes : new boolean[] {true, false}) {
+        out.print(networkName);
+        out.print(' ');
+        out.print(direction);
+        out.print(": top ");
+        out.print(limit);
+        out.print(" over ");
+        out.print(seconds);
+        out.print(" seconds by ");
+        out.println(byBytes ? "bits" : "packets");
+        for (TrafficHistory.Talker talker : h.getTopTalkers(seconds, limit, byBytes)) {
+          out.print("  ");
+          out.print(talker.getIpAddress());
+          out.print('\t');
+          out.print(talker.getBitRate());
+          out.print(" bps\t");
+          out.print(talker.getPacketRate());
+          out.println(" pps");
         }
       }
     }
   }
 
+  /**
+   * Monitors the configured networks and prints the top talkers every ten seconds, so the hosts
+   * being hit may be seen during an attack.  History is kept for at least fifteen minutes.
+   * Null routes are never added, leaving them to the daemon.
+   *
+   * <p>Usage: <code>NetworkMonitor [<var>seconds</var> [<var>limit</var>]]</code>, where <var>seconds</var>
+   * is the number of most recent seconds combined (default 60) and <var>limit</var> is the number
+   * of hosts shown (default 10).</p>
+   */
+  public static void main(String[] args) {
+    final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+    final int limit = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    start(false, Math.max(MAIN_HISTORY_SECONDS, seconds));
+    final PrintStream out = System.out;
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(MAIN_PRINT_INTERVAL);
+      } catch (InterruptedException err) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        break;
+      }
+      synchronized (out) {
+        for (String networkName : AoservDaemonConfiguration.getNetworkMonitors().keySet()) {
+          printTopTalkers(networkName, "in", seconds, limit, out);
+          printTopTalkers(networkName, "out", seconds, limit, out);
+        }
+        out.println();
+      }
+    }
+    System.exit(0);
+  }
+
   private final String device;
   private final String direction;
   private final List<String> networkRanges;
@@ -114,9 +221,12 @@ public final class NetworkMonitor {
   private final Long nullRouteFifoErrorRateMinPps;
   private final Long nullRoutePacketRate;
   private final Long nullRouteBitRate;
+  private final int historySeconds;
 
   private Thread thread;
 
+  private volatile TrafficHistory history;
+
   private NetworkMonitor(
       String device,
       String direction,
@@ -126,7 +236,8 @@ public final class NetworkMonitor {
       Long nullRouteFifoErrorRate,
       Long nullRouteFifoErrorRateMinPps,
       Long nullRoutePacketRate,
-      Long nullRouteBitRate
+      Long nullRouteBitRate,
+      int historySeconds
   ) {
     this.device = device;
     this.direction = direction;
@@ -137,6 +248,7 @@ public final class NetworkMonitor {
     this.nullRouteFifoErrorRateMinPps = nullRouteFifoErrorRateMinPps;
     this.nullRoutePacketRate = nullRoutePacketRate;
     this.nullRouteBitRate = nullRouteBitRate;
+    this.historySeconds = historySeconds;
   }
 
   static class Counts {
@@ -151,7 +263,7 @@ public final class NetworkMonitor {
 
   private static final Counts ZERO_COUNTS = new Counts(0, 0);
 
-  private Counts readCounts(DataInputStream in) throws IOException {
+  private static Counts readCounts(DataInputStream in) throws IOException {
     final long packets = in.readLong();
     final long bytes   = in.readLong();
     if (
@@ -213,7 +325,7 @@ public final class NetworkMonitor {
 
   private static final ProtocolCounts ZERO_PROTOCOL_COUNTS = new ProtocolCounts(0, 0, 0, 0, 0, 0, 0, 0);
 
-  private ProtocolCounts readProtocolCounts(DataInputStream in) throws IOException {
+  private static ProtocolCounts readProtocolCounts(DataInputStream in) throws IOException {
     final long icmpPackets  = in.readLong();
     final long icmpBytes    = in.readLong();
     final long udpPackets   = in.readLong();
@@ -246,28 +358,146 @@ public final class NetworkMonitor {
     );
   }
 
-  abstract static class Network {
-    Network() {
-      // Do nothing
+  /**
+   * The number of bytes in the binary representation of one {@link ProtocolCounts}.
+   */
+  private static final int PROTOCOL_COUNTS_BYTES = 8 * Long.BYTES;
+
+  /**
+   * The maximum number of per-IP counts decoded from each bulk read.
+   */
+  private static final int IPS_PER_READ = 4096;
+
+  /**
+   * The per-IP counts of one IPv4 network, with all protocols combined.
+   * Instances are reused between records so that no objects are allocated per IP.
+   */
+  static class Ipv4Network {
+    int address;
+    byte prefix;
+    ProtocolCounts totalCounts;
+    final long[] packets;
+    final long[] bytes;
+
+    Ipv4Network(int numIps) {
+      this.packets = new long[numIps];
+      this.bytes = new long[numIps];
     }
   }
 
-  static class Ipv4Network extends Network {
-    final int address;
-    final byte prefix;
-    final ProtocolCounts totalCounts;
-    final ProtocolCounts[] ips;
-
-    Ipv4Network(
-        int address,
-        byte prefix,
-        ProtocolCounts totalCounts,
-        ProtocolCounts[] ips
-    ) {
-      this.address = address;
-      this.prefix = prefix;
-      this.totalCounts = totalCounts;
-      this.ips = ips;
+  /**
+   * Decodes the networks section of each record into reusable primitive arrays, finding the hosts with
+   * the highest packet and byte counts while streaming.  One instance is used by each monitor thread.
+   */
+  static class NetworksDecoder {
+    private final byte[] buff = new byte[IPS_PER_READ * PROTOCOL_COUNTS_BYTES];
+    private final ByteBuffer buffer = ByteBuffer.wrap(buff); // Big-endian, matching DataInputStream
+    private Ipv4Network[] networks = new Ipv4Network[0];
+    private int numNetworks;
+
+    private int highestPacketIp;
+    private long highestPacketCount;
+    private int highestByteIp;
+    private long highestByteCount;
+
+    void read(DataInputStream in) throws IOException {
+      final int newNumNetworks = in.readInt();
+      if (newNumNetworks > networks.length) {
+        networks = Arrays.copyOf(networks, newNumNetworks);
+      }
+      highestPacketIp = 0;
+      highestPacketCount = Long.MIN_VALUE;
+      highestByteIp = 0;
+      highestByteCount = Long.MIN_VALUE;
+      for (int netIndex = 0; netIndex < newNumNetworks; netIndex++) {
+        final byte ipVersion = in.readByte();
+        if (ipVersion != 4) {
+          throw new IOException("Unexpected ipVersion: " + ipVersion);
+        }
+        final int address = in.readInt();
+        final byte prefix = in.readByte();
+        final ProtocolCounts totalCounts = readProtocolCounts(in);
+        final int numIps = 1 << (32 - prefix);
+        Ipv4Network network = networks[netIndex];
+        if (network == null || network.packets.length != numIps) {
+          network = new Ipv4Network(numIps);
+          networks[netIndex] = network;
+        }
+        network.address = address;
+        network.prefix = prefix;
+        network.totalCounts = totalCounts;
+        final long[] packets = network.packets;
+        final long[] bytes = network.bytes;
+        int ipIndex = 0;
+        while (ipIndex < numIps) {
+          final int batchEnd = ipIndex + Math.min(numIps - ipIndex, IPS_PER_READ);
+          in.readFully(buff, 0, (batchEnd - ipIndex) * PROTOCOL_COUNTS_BYTES);
+          for (int off = 0; ipIndex < batchEnd; ipIndex++, off += PROTOCOL_COUNTS_BYTES) {
+            // icmp, udp, tcp, and other: packets followed by bytes
+            final long packetCount =
+                buffer.getLong(off)
+                    + buffer.getLong(off + 2 * Long.BYTES)
+                    + buffer.getLong(off + 4 * Long.BYTES)
+                    + buffer.getLong(off + 6 * Long.BYTES);
+            final long byteCount =
+                buffer.getLong(off + Long.BYTES)
+                    + buffer.getLong(off + 3 * Long.BYTES)
+                    + buffer.getLong(off + 5 * Long.BYTES)
+                    + buffer.getLong(off + 7 * Long.BYTES);
+            packets[ipIndex] = packetCount;
+            bytes[ipIndex] = byteCount;
+            if (packetCount > highestPacketCount) {
+              highestPacketIp = address + ipIndex;
+              highestPacketCount = packetCount;
+            }
+            if (byteCount > highestByteCount) {
+              highestByteIp = address + ipIndex;
+              highestByteCount = byteCount;
+            }
+          }
+        }
+      }
+      numNetworks = newNumNetworks;
+    }
+
+    /**
+     * Gets the networks read from the last record.  Only the first {@link #getNumNetworks()} elements are used.
+     */
+    @SuppressWarnings("ReturnOfCollectionOrArrayField") // Shared with TrafficHistory to avoid copying
+    Ipv4Network[] getNetworks() {
+      return networks;
+    }
+
+    int getNumNetworks() {
+      return numNetworks;
+    }
+
+    /**
+     * Gets the host with the highest packet count (all protocols combined) in the last record.
+     */
+    int getHighestPacketIp() {
+      if (highestPacketCount == Long.MIN_VALUE) {
+        throw new AssertionError("Unable to find IP to null route");
+      }
+      return highestPacketIp;
+    }
+
+    long getHighestPacketCount() {
+      return highestPacketCount;
+    }
+
+    /**
+     * Gets the host with the highest byte count (all protocols combined) in the last record.
+     */
+    int getHighestByteIp() {
+      if (highestByteCount == Long.MIN_VALUE) {
+        throw new AssertionError("Unable to find IP to null route");
+      }
+      return highestByteIp;
+    }
+
+    long getHighestByteCount() {
+      return highestByteCount;
     }
   }
 
@@ -322,11 +552,11 @@ public final class NetworkMonitor {
     out.println();
   }
 
-  private static long getBitRate(long bytes, long timeSpanMicros) {
+  static long getBitRate(long bytes, long timeSpanMicros) {
     return Math.multiplyExact(bytes, 8 * MICROS_PER_SECOND) / timeSpanMicros;
   }
 
-  private static long getPacketRate(long packets, long timeSpanMicros) {
+  static long getPacketRate(long packets, long timeSpanMicros) {
     return Math.multiplyExact(packets, MICROS_PER_SECOND) / timeSpanMicros;
   }
 
@@ -405,6 +635,7 @@ public final class NetworkMonitor {
                 try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
                   // Must be at least 5 seconds between FIFO-generate null routes
                   Long lastFifoErrors = null;
+                  final NetworksDecoder decoder = new NetworksDecoder();
                   while (true) {
                     if (Thread.currentThread().isInterrupted()) {
                       throw new InterruptedIOException();
@@ -428,24 +659,7 @@ public final class NetworkMonitor {
                     final Counts totalExtrapolated = readCounts(in);
                     final Counts unparseable = readCounts(in);
                     final ProtocolCounts otherNetwork = readProtocolCounts(in);
-                    final int numNetworks = in.readInt();
-                    final Network[] networks = new Network[numNetworks];
-                    for (int netIndex = 0; netIndex < numNetworks; netIndex++) {
-                      final byte ipVersion = in.readByte();
-                      if (ipVersion == 4) {
-                        final int address = in.readInt();
-                        final byte prefix = in.readByte();
-                        final ProtocolCounts totalCounts = readProtocolCounts(in);
-                        final int numIps = 1 << (32 - prefix);
-                        final ProtocolCounts[] ips = new ProtocolCounts[numIps];
-                        for (int ipIndex = 0; ipIndex < numIps; ipIndex++) {
-                          ips[ipIndex] = readProtocolCounts(in);
-                        }
-                        networks[netIndex] = new Ipv4Network(address, prefix, totalCounts, ips);
-                      } else {
-                        throw new IOException("Unexpected ipVersion: " + ipVersion);
-                      }
-                    }
+                    decoder.read(in);
                     if (DEBUG) {
                       final PrintStream out = System.out;
                       synchronized (out) {
@@ -496,26 +710,8 @@ public final class NetworkMonitor {
                           long fifoErrorRate = getPacketRate(newFifoErrors - lastFifoErrors, timeSpanMicros);
                           if (fifoErrorRate >= nullRouteFifoErrorRate) {
                             // Find host with highest packets count (all protocols combined)
-                            int nullingIp = 0;
-                            long highestPacketCount = Long.MIN_VALUE;
-                            for (Network network : networks) {
-                              if (network instanceof Ipv4Network) {
-                                Ipv4Network ipv4Network = (Ipv4Network) network;
-                                ProtocolCounts[] ips = ipv4Network.ips;
-                                for (int ipIndex = 0, len = ips.length; ipIndex < len; ipIndex++) {
-                                  long packetCount = ips[ipIndex].getPackets();
-                                  if (packetCount > highestPacketCount) {
-                                    nullingIp = ipv4Network.address + ipIndex;
-                                    highestPacketCount = packetCount;
-                                  }
-                                }
-                              } else {
-                                throw new AssertionError("Unexpected type of network: " + (network == null ? "null" : network.getClass().getName()));
-                              }
-                            }
-                            if (highestPacketCount == Long.MIN_VALUE) {
-                              throw new AssertionError("Unable to find IP to null route");
-                            }
+                            final int nullingIp = decoder.getHighestPacketIp();
+                            final long highestPacketCount = decoder.getHighestPacketCount();
                             if (
                                 nullRouteFifoErrorRateMinPps != null
                                     && highestPacketCount < nullRouteFifoErrorRateMinPps
@@ -559,26 +755,8 @@ public final class NetworkMonitor {
                         long packetRate = getPacketRate(totalIface.packets, timeSpanMicros);
                         if (packetRate >= nullRoutePacketRate) {
                           // Find host with highest packets count (all protocols combined)
-                          int nullingIp = 0;
-                          long highestPacketCount = Long.MIN_VALUE;
-                          for (Network network : networks) {
-                            if (network instanceof Ipv4Network) {
-                              Ipv4Network ipv4Network = (Ipv4Network) network;
-                              ProtocolCounts[] ips = ipv4Network.ips;
-                              for (int ipIndex = 0, len = ips.length; ipIndex < len; ipIndex++) {
-                                long packetCount = ips[ipIndex].getPackets();
-                                if (packetCount > highestPacketCount) {
-                                  nullingIp = ipv4Network.address + ipIndex;
-                                  highestPacketCount = packetCount;
-                                }
-                              }
-                            } else {
-                              throw new AssertionError("Unexpected type of network: " + (network == null ? "null" : network.getClass().getName()));
-                            }
-                          }
-                          if (highestPacketCount == Long.MIN_VALUE) {
-                            throw new AssertionError("Unable to find IP to null route");
-                          }
+                          final int nullingIp = decoder.getHighestPacketIp();
+                          final long highestPacketCount = decoder.getHighestPacketCount();
                           PrintStream out = System.out;
                           synchronized (out) {
                             out.print(threadName);
@@ -601,26 +779,8 @@ public final class NetworkMonitor {
                         long bitRate = getBitRate(totalIface.bytes, timeSpanMicros);
                         if (bitRate >= nullRouteBitRate) {
                           // Find host with highest bytes count (all protocols combined)
-                          int nullingIp = 0;
-                          long highestByteCount = Long.MIN_VALUE;
-                          for (Network network : networks) {
-                            if (network instanceof Ipv4Network) {
-                              Ipv4Network ipv4Network = (Ipv4Network) network;
-                              ProtocolCounts[] ips = ipv4Network.ips;
-                              for (int ipIndex = 0, len = ips.length; ipIndex < len; ipIndex++) {
-                                long byteCount = ips[ipIndex].getBytes();
-                                if (byteCount > highestByteCount) {
-                                  nullingIp = ipv4Network.address + ipIndex;
-                                  highestByteCount = byteCount;
-                                }
-                              }
-                            } else {
-                              throw new AssertionError("Unexpected type of network: " + (network == null ? "null" : network.getClass().getName()));
-                            }
-                          }
-                          if (highestByteCount == Long.MIN_VALUE) {
-                            throw new AssertionError("Unable to find IP to null route");
-                          }
+                          final int nullingIp = decoder.getHighestByteIp();
+                          final long highestByteCount = decoder.getHighestByteCount();
                           PrintStream out = System.out;
                           synchronized (out) {
                             out.print(threadName);
@@ -638,7 +798,16 @@ public final class NetworkMonitor {
                         }
                       }
                     }
-                    // TODO: Build statistics database/history (in master since roles can change?  Or history per gateway?)
+                    // Record recent history
+                    if (historySeconds > 0) {
+                      TrafficHistory h = history;
+                      if (h == null || !h.matches(decoder)) {
+                        h = new TrafficHistory(decoder, historySeconds);
+                        history = h;
+                      }
+                      h.record(decoder, timeEndSeconds * 1000 + timeEndMicros / 1000, timeSpanMicros);
+                    }
+                    // TODO: Build statistics database/history in master (since roles can change?)
                     // TODO: Report to any listeners
                   }
                 }
@@ -0,0 +1,349 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.monitor;
+
+import com.aoindustries.aoserv.client.net.IpAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A fixed-size, in-memory history of the per-IP traffic reported to one {@link NetworkMonitor}.
+ * Each ip_counts record is stored in one slot of a ring buffer of primitive arrays, so recording
+ * does not allocate and the most recent records may be queried for top talkers or per-IP time series.
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class TrafficHistory {
+
+  /**
+   * The maximum number of per-IP counts retained, which limits each history to 32 MiB.
+   * Large networks keep fewer records to stay within this limit.
+   */
+  static final int MAX_COUNTS = 1 << 22;
+
+  /**
+   * The combined counts for one IP address over a span of time.
+   */
+  public static final class Talker {
+
+    private final int ip;
+    private final long timeSpanMicros;
+    private final long packets;
+    private final long bytes;
+
+    private Talker(int ip, long timeSpanMicros, long packets, long bytes) {
+      this.ip = ip;
+      this.timeSpanMicros = timeSpanMicros;
+      this.packets = packets;
+      this.bytes = bytes;
+    }
+
+    public int getIp() {
+      return ip;
+    }
+
+    public String getIpAddress() {
+      return IpAddress.getIpAddressForInt(ip);
+    }
+
+    public long getTimeSpanMicros() {
+      return timeSpanMicros;
+    }
+
+    public long getPackets() {
+      return packets;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getPacketRate() {
+      return NetworkMonitor.getPacketRate(packets, timeSpanMicros);
+    }
+
+    public long getBitRate() {
+      return NetworkMonitor.getBitRate(bytes, timeSpanMicros);
+    }
+  }
+
+  /**
+   * The counts for one IP address in one ip_counts record.
+   */
+  public static final class Sample {
+
+    private final long timeEnd;
+    private final long timeSpanMicros;
+    private final long packets;
+    private final long bytes;
+
+    private Sample(long timeEnd, long timeSpanMicros, long packets, long bytes) {
+      this.timeEnd = timeEnd;
+      this.timeSpanMicros = timeSpanMicros;
+      this.packets = packets;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Gets the time the sample ended, in milliseconds since the Epoch.
+     */
+    public long getTimeEnd() {
+      return timeEnd;
+    }
+
+    public long getTimeSpanMicros() {
+      return timeSpanMicros;
+    }
+
+    public long getPackets() {
+      return packets;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getPacketRate() {
+      return NetworkMonitor.getPacketRate(packets, timeSpanMicros);
+    }
+
+    public long getBitRate() {
+      return NetworkMonitor.getBitRate(bytes, timeSpanMicros);
+    }
+  }
+
+  private final int[] addresses;
+  private final int[] prefixes;
+  /**
+   * The index of the first IP of each network within the combined IPs of all networks.
+   */
+  private final int[] offsets;
+  private final int numIps;
+  private final int capacity;
+
+  private final long[] timeEnds;
+  private final long[] timeSpans;
+  /**
+   * The per-IP counts, indexed by <code>slot * numIps + ipIndex</code>, saturated at {@link Integer#MAX_VALUE}.
+   */
+  private final int[] packets;
+  private final int[] bytes;
+
+  /**
+   * The total number of records ever recorded.  Record number <var>n</var> is stored in
+   * slot <code><var>n</var> % capacity</code>.
+   */
+  private long recorded;
+
+  /**
+   * Creates a history for the layout of the networks most recently read by the decoder.
+   *
+   * @param  seconds  the number of records to retain, reduced as needed for large networks
+   */
+  TrafficHistory(NetworkMonitor.NetworksDecoder decoder, int seconds) {
+    final int numNetworks = decoder.getNumNetworks();
+    final NetworkMonitor.Ipv4Network[] networks = decoder.getNetworks();
+    addresses = new int[numNetworks];
+    prefixes = new int[numNetworks];
+    offsets = new int[numNetworks];
+    int total = 0;
+    for (int i = 0; i < numNetworks; i++) {
+      NetworkMonitor.Ipv4Network network = networks[i];
+      addresses[i] = network.address;
+      prefixes[i] = network.prefix;
+      offsets[i] = total;
+      total = Math.addExact(total, network.packets.length);
+    }
+    numIps = total;
+    capacity = Math.max(1, Math.min(seconds, MAX_COUNTS / Math.max(1, numIps)));
+    timeEnds = new long[capacity];
+    timeSpans = new long[capacity];
+    packets = new int[capacity * numIps];
+    bytes = new int[capacity * numIps];
+  }
+
+  /**
+   * Checks if the networks most recently read by the decoder have the same layout as this history.
+   */
+  boolean matches(NetworkMonitor.NetworksDecoder decoder) {
+    final int numNetworks = decoder.getNumNetworks();
+    if (numNetworks != addresses.length) {
+      return false;
+    }
+    final NetworkMonitor.Ipv4Network[] networks = decoder.getNetworks();
+    for (int i = 0; i < numNetworks; i++) {
+      NetworkMonitor.Ipv4Network network = networks[i];
+      if (network.address != addresses[i] || network.prefix != prefixes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int saturate(long count) {
+    return count > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) count;
+  }
+
+  /**
+   * Records the networks most recently read by the decoder, replacing the oldest record when full.
+   */
+  synchronized void record(NetworkMonitor.NetworksDecoder decoder, long timeEnd, long timeSpanMicros) {
+    assert matches(decoder);
+    final int slot = (int) (recorded % capacity);
+    timeEnds[slot] = timeEnd;
+    timeSpans[slot] = timeSpanMicros;
+    final NetworkMonitor.Ipv4Network[] networks = decoder.getNetworks();
+    for (int i = 0, len = addresses.length; i < len; i++) {
+      final long[] networkPackets = networks[i].packets;
+      final long[] networkBytes = networks[i].bytes;
+      int index = slot * numIps + offsets[i];
+      for (int ipIndex = 0, numNetworkIps = networkPackets.length; ipIndex < numNetworkIps; ipIndex++, index++) {
+        packets[index] = saturate(networkPackets[ipIndex]);
+        bytes[index] = saturate(networkBytes[ipIndex]);
+      }
+    }
+    recorded++;
+  }
+
+  /**
+   * Gets the maximum number of records retained.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the IP address for an index within the combined IPs of all networks.
+   */
+  private int getIp(int index) {
+    int netIndex = addresses.length - 1;
+    while (offsets[netIndex] > index) {
+      netIndex--;
+    }
+    return addresses[netIndex] + (index - offsets[netIndex]);
+  }
+
+  /**
+   * Gets the index of an IP address within the combined IPs of all networks.
+   *
+   * @return  the index or {@code -1} when not in any network
+   */
+  private int getIndex(int ip) {
+    for (int i = 0, len = addresses.length; i < len; i++) {
+      int numNetworkIps = (i == len - 1 ? numIps : offsets[i + 1]) - offsets[i];
+      int ipIndex = ip - addresses[i];
+      if (Integer.compareUnsigned(ipIndex, numNetworkIps) < 0) {
+        return offsets[i] + ipIndex;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the hosts with the most traffic over the most recent records.
+   *
+   * @param  seconds  the number of most recent records to combine
+   * @param  limit    the maximum number of hosts to return
+   * @param  byBytes  order by bytes when {@code true}, or by packets when {@code false}
+   *
+   * @return  the hosts with any traffic, highest first
+   */
+  public List<Talker> getTopTalkers(int seconds, int limit, boolean byBytes) {
+    if (limit <= 0 || numIps == 0) {
+      return Collections.emptyList();
+    }
+    final long[] totalPackets = new long[numIps];
+    final long[] totalBytes = new long[numIps];
+    long timeSpanMicros = 0;
+    final long last;
+    final int count;
+    synchronized (this) {
+      last = recorded;
+      count = (int) Math.max(0, Math.min(seconds, Math.min(recorded, capacity)));
+    }
+    // Sum one record per lock, so recording is only blocked briefly and the window is not copied
+    for (int i = 0; i < count; i++) {
+      final long record = last - 1 - i;
+      synchronized (this) {
+        if (recorded - record > capacity) {
+          // Overwritten while summing
+          break;
+        }
+        final int slot = (int) (record % capacity);
+        timeSpanMicros += timeSpans[slot];
+        for (int ipIndex = 0, index = slot * numIps; ipIndex < numIps; ipIndex++, index++) {
+          totalPackets[ipIndex] += packets[index];
+          totalBytes[ipIndex] += bytes[index];
+        }
+      }
+    }
+    if (timeSpanMicros == 0) {
+      return Collections.emptyList();
+    }
+    // Insertion into the fixed-size list of highest totals
+    final long[] totals = byBytes ? totalBytes : totalPackets;
+    final int[] top = new int[Math.min(limit, numIps)];
+    int topSize = 0;
+    for (int ipIndex = 0; ipIndex < numIps; ipIndex++) {
+      final long total = totals[ipIndex];
+      if (total > 0 && (topSize < top.length || total > totals[top[topSize - 1]])) {
+        int pos = topSize < top.length ? topSize++ : topSize - 1;
+        while (pos > 0 && totals[top[pos - 1]] < total) {
+          top[pos] = top[pos - 1];
+          pos--;
+        }
+        top[pos] = ipIndex;
+      }
+    }
+    List<Talker> talkers = new ArrayList<>(topSize);
+    for (int i = 0; i < topSize; i++) {
+      final int ipIndex = top[i];
+      talkers.add(new Talker(getIp(ipIndex), timeSpanMicros, totalPackets[ipIndex], totalBytes[ipIndex]));
+    }
+    return talkers;
+  }
+
+  /**
+   * Gets the retained records for a single IP address, oldest first.
+   *
+   * @return  the samples or an empty list when the IP address is not in any monitored network
+   */
+  public List<Sample> getTimeSeries(int ip) {
+    final int ipIndex = getIndex(ip);
+    if (ipIndex == -1) {
+      return Collections.emptyList();
+    }
+    synchronized (this) {
+      final int size = (int) Math.min(recorded, capacity);
+      List<Sample> samples = new ArrayList<>(size);
+      for (long record = recorded - size; record < recorded; record++) {
+        final int slot = (int) (record % capacity);
+        final int index = slot * numIps + ipIndex;
+        samples.add(new Sample(timeEnds[slot], timeSpans[slot], packets[index], bytes[index]));
+      }
+      return samples;
+    }
+  }
+}
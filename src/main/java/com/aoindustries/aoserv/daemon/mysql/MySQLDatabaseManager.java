@@ -26,8 +26,8 @@ package com.aoindustries.aoserv.daemon.mysql;
 import com.aoapps.concurrent.KeyedConcurrencyReducer;
 import com.aoapps.hodgepodge.io.stream.StreamableOutput;
 import com.aoapps.io.posix.PosixFile;
+import com.aoapps.lang.Throwables;
 import com.aoapps.lang.concurrent.ExecutionExceptions;
-import com.aoapps.lang.util.BufferManager;
 import com.aoapps.lang.util.ErrorPrinter;
 import com.aoapps.lang.util.PropertiesUtils;
 import com.aoapps.lang.validation.ValidationException;
@@ -47,31 +47,38 @@ import com.aoindustries.aoserv.daemon.backup.BackupManager;
 import com.aoindustries.aoserv.daemon.client.AoservDaemonProtocol;
 import com.aoindustries.aoserv.daemon.posix.linux.PackageManager;
 import com.aoindustries.aoserv.daemon.util.BuilderThread;
+import com.aoindustries.aoserv.daemon.util.DaemonFileUtils;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -251,54 +258,71 @@ public final class MySQLDatabaseManager extends BuilderThread {
     }
   }
 
+  /**
+   * The output path given to the dump script to have it write the dump to its standard output.
+   */
+  private static final String STREAM_OUTPUT = "/dev/stdout";
+
+  /**
+   * Dumps a database to the daemon protocol.
+   *
+   * <p>Protocols before {@link AoservDaemonProtocol.Version#VERSION_1_80_0} frame the dump by its chunks
+   * alone, so the dump is copied from the standard output of the dump script as it is produced.  This needs
+   * no scratch space, and the first chunk is sent without waiting for the dump to complete.</p>
+   *
+   * <p>Protocol {@link AoservDaemonProtocol.Version#VERSION_1_80_0} and newer send the size of the dump before
+   * its first chunk.  The size is not known until the dump completes, so these dumps are still written to a
+   * temporary file first.  Streaming to them would require a protocol version without the size prefix, and the
+   * protocol versions are defined by the client library.</p>
+   */
   public static void dumpDatabase(
       Database md,
       AoservDaemonProtocol.Version protocolVersion,
       StreamableOutput masterOut,
       boolean gzip
   ) throws IOException, SQLException {
-    try (
-        TempFileContext tempFileContext = new TempFileContext();
-        TempFile tempFile = tempFileContext.createTempFile("dump_mysql_database_", gzip ? ".sql.gz" : ".sql")
-        ) {
-      dumpDatabase(
-          md.getMysqlServer(),
-          md.getName(),
-          tempFile.getFile(),
-          gzip
+    Server ms = md.getMysqlServer();
+    Database.Name dbName = md.getName();
+    if (protocolVersion.compareTo(AoservDaemonProtocol.Version.VERSION_1_80_0) < 0) {
+      String[] command = getDumpCommand(ms, dbName, STREAM_OUTPUT, gzip);
+      logger.info(() -> "Streaming database: " + dbName + " on " + ms);
+      long[] bytesWritten = {0};
+      AoservDaemon.execRun(
+          dumpin -> bytesWritten[0] = DaemonFileUtils.writeChunks(dumpin, -1, masterOut),
+          WORKING_DIRECTORY,
+          command
       );
-      long dumpSize = new PosixFile(tempFile.getFile()).getStat().getSize();
-      if (protocolVersion.compareTo(AoservDaemonProtocol.Version.VERSION_1_80_0) >= 0) {
-        masterOut.writeLong(dumpSize);
+      // Also catches a dump script that did not write to its standard output
+      if (bytesWritten[0] == 0) {
+        throw new SQLException("Empty dump\nCommand: " + AoservDaemon.getCommandString(command));
       }
-      long bytesRead = 0;
-      try (InputStream dumpin = new FileInputStream(tempFile.getFile())) {
-        byte[] buff = BufferManager.getBytes();
-        try {
-          int ret;
-          while ((ret = dumpin.read(buff, 0, BufferManager.BUFFER_SIZE)) != -1) {
-            bytesRead += ret;
-            if (bytesRead > dumpSize) {
-              throw new IOException("Too many bytes read: " + bytesRead + " > " + dumpSize);
-            }
-            masterOut.writeByte(AoservDaemonProtocol.NEXT);
-            masterOut.writeShort(ret);
-            masterOut.write(buff, 0, ret);
-          }
-        } finally {
-          BufferManager.release(buff, false);
-        }
-      }
-      if (bytesRead < dumpSize) {
-        throw new IOException("Too few bytes read: " + bytesRead + " < " + dumpSize);
+    } else {
+      try (
+          TempFileContext tempFileContext = new TempFileContext();
+          TempFile tempFile = tempFileContext.createTempFile("dump_mysql_database_", gzip ? ".sql.gz" : ".sql")
+          ) {
+        dumpDatabase(
+            ms,
+            dbName,
+            tempFile.getFile(),
+            gzip
+        );
+        long dumpSize = new PosixFile(tempFile.getFile()).getStat().getSize();
+        masterOut.writeLong(dumpSize);
+        DaemonFileUtils.writeChunks(tempFile.getFile(), dumpSize, masterOut);
       }
     }
   }
 
-  private static void dumpDatabase(
+  /**
+   * Gets the command to dump a database, installing any packages it requires.
+   *
+   * @param  outputPath  the file the dump is written to, or {@link #STREAM_OUTPUT}
+   */
+  private static String[] getDumpCommand(
       Server ms,
       Database.Name dbName,
-      File output,
+      String outputPath,
       boolean gzip
   ) throws IOException, SQLException {
     String commandPath;
@@ -320,16 +344,25 @@ public final class MySQLDatabaseManager extends BuilderThread {
     if (gzip) {
       PackageManager.installPackage(PackageManager.PackageName.GZIP);
     }
-    logger.info(() -> "Dumping database: " + dbName + " on " + ms + " to " + output);
-    String[] command = {
+    return new String[]{
         commandPath,
         dbName.toString(),
         ms.getMinorVersion(),
         ms.getName().toString(),
         Integer.toString(ms.getBind().getPort().getPort()),
-        output.getPath(),
+        outputPath,
         Boolean.toString(gzip)
     };
+  }
+
+  private static void dumpDatabase(
+      Server ms,
+      Database.Name dbName,
+      File output,
+      boolean gzip
+  ) throws IOException, SQLException {
+    String[] command = getDumpCommand(ms, dbName, output.getPath(), gzip);
+    logger.info(() -> "Dumping database: " + dbName + " on " + ms + " to " + output);
     AoservDaemon.exec(WORKING_DIRECTORY, command);
     if (output.length() == 0) {
       throw new SQLException("Empty dump file: " + output + "\nCommand: " + AoservDaemon.getCommandString(command));
@@ -736,6 +769,16 @@ public final class MySQLDatabaseManager extends BuilderThread {
       return hash;
     }
 
+    /**
+     * Checks if this key is for a table in the given database.
+     */
+    private boolean isDatabase(PosixPath failoverRoot, Port port, Database.Name databaseName) {
+      return
+          this.port == port
+              && Objects.equals(this.failoverRoot, failoverRoot)
+              && this.databaseName.equals(databaseName);
+    }
+
     @Override
     public boolean equals(Object obj) {
       if (!(obj instanceof CheckTableConcurrencyKey)) {
@@ -756,8 +799,237 @@ public final class MySQLDatabaseManager extends BuilderThread {
 
   private static final KeyedConcurrencyReducer<CheckTableConcurrencyKey, List<Database.CheckTableResult>> checkTableLimiter = new KeyedConcurrencyReducer<>();
 
+  /**
+   * The maximum number of tables checked concurrently on one server, shared by all concurrent calls to
+   * {@link #checkTables(com.aoindustries.aoserv.client.linux.PosixPath, int, com.aoindustries.aoserv.client.mysql.Server.Name, com.aoapps.net.Port, com.aoindustries.aoserv.client.mysql.Database.Name, java.util.List, com.aoapps.hodgepodge.io.stream.StreamableOutput)}.
+   * Each concurrent check uses its own connection.
+   */
+  private static final int CHECK_TABLES_CONCURRENCY = 4;
+
+  private static class CheckTablesServerKey {
+
+    private final PosixPath failoverRoot;
+    private final Port port;
+    private final int hash;
+
+    private CheckTablesServerKey(
+        PosixPath failoverRoot,
+        Port port
+    ) {
+      this.failoverRoot = failoverRoot;
+      this.port = port;
+      this.hash = Objects.hashCode(failoverRoot) * 31 + port.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof CheckTablesServerKey)) {
+        return false;
+      }
+      CheckTablesServerKey other = (CheckTablesServerKey) obj;
+      return
+          // hash check shortcut
+          hash == other.hash
+              // == fields
+              && port == other.port
+              // .equals fields
+              && Objects.equals(failoverRoot, other.failoverRoot);
+    }
+  }
+
+  /**
+   * The permits for checking tables on each server, with {@link #CHECK_TABLES_CONCURRENCY} permits each.
+   * A worker holds one permit, and its connection, while checking tables.
+   */
+  private static final ConcurrentMap<CheckTablesServerKey, Semaphore> checkTablesPermits = new ConcurrentHashMap<>();
+
+  /**
+   * How often a worker waiting for a permit checks if it should stop.
+   */
+  private static final long CHECK_TABLES_PERMIT_POLL = 1000;
+
+  /**
+   * The results of the last successful check of a table, along with its update time at that check.
+   * The results are stored with a duration of zero, since they are returned without checking the table again.
+   */
+  private static class SuccessfulCheck {
+
+    private final String updateTime;
+    private final List<Database.CheckTableResult> results;
+    /**
+     * The time the table was last requested, used to forget tables that are no longer checked.
+     */
+    private volatile long lastRequested;
+
+    private SuccessfulCheck(String updateTime, List<Database.CheckTableResult> results, long lastRequested) {
+      this.updateTime = updateTime;
+      this.results = results;
+      this.lastRequested = lastRequested;
+    }
+  }
+
+  /**
+   * Successful checks of tables not requested within this time are forgotten, such as tables in dropped
+   * databases or on removed servers.
+   */
+  private static final long SUCCESSFUL_CHECK_MAX_AGE = 7L * 24 * 60 * 60 * 1000; // One week
+
+  /**
+   * The last successful check of each table, used to skip tables not updated since.
+   * Tables without an update time, such as InnoDB on older servers, are always checked.
+   * Each call to {@link #checkTables(com.aoindustries.aoserv.client.linux.PosixPath, int, com.aoindustries.aoserv.client.mysql.Server.Name, com.aoapps.net.Port, com.aoindustries.aoserv.client.mysql.Database.Name, java.util.List, com.aoapps.hodgepodge.io.stream.StreamableOutput)}
+   * removes the tables of its database that were not requested, along with any table not requested within
+   * {@link #SUCCESSFUL_CHECK_MAX_AGE}.
+   */
+  private static final ConcurrentMap<CheckTableConcurrencyKey, SuccessfulCheck> successfulChecks = new ConcurrentHashMap<>();
+
+  /**
+   * Finds the local server for a connection, to use its connection pool.
+   *
+   * @return  the server or <code>null</code> when in a failover image or not found
+   */
+  private static Server getLocalServer(PosixPath failoverRoot, Port port) throws IOException, SQLException {
+    if (failoverRoot == null) {
+      for (Server ms : AoservDaemon.getThisServer().getMysqlServers()) {
+        if (ms.getBind().getPort().equals(port)) {
+          return ms;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets a connection for checking tables, from the pool when available.
+   */
+  private static Connection getCheckTablesConnection(
+      Server localServer,
+      PosixPath failoverRoot,
+      int nestedOperatingSystemVersion,
+      Server.Name serverName,
+      Port port
+  ) throws IOException, SQLException {
+    if (localServer != null) {
+      return MySQLServerManager.getPool(localServer).getConnection();
+    } else {
+      return getMysqlConnection(failoverRoot, nestedOperatingSystemVersion, serverName, port);
+    }
+  }
+
+  /**
+   * Gets the update time of each table in a database, which is <code>null</code> when not tracked by the engine.
+   */
+  private static Map<String, String> getUpdateTimes(Connection conn, Database.Name databaseName) throws SQLException {
+    Map<String, String> updateTimes = new HashMap<>();
+    String currentSql = null;
+    try (PreparedStatement pstmt = conn.prepareStatement(
+        currentSql = "SELECT TABLE_NAME, UPDATE_TIME FROM information_schema.TABLES WHERE TABLE_SCHEMA=?"
+    )) {
+      pstmt.setString(1, databaseName.toString());
+      try (ResultSet results = pstmt.executeQuery()) {
+        while (results.next()) {
+          updateTimes.put(results.getString(1), results.getString(2));
+        }
+      }
+    } catch (Error | RuntimeException | SQLException e) {
+      ErrorPrinter.addSql(e, currentSql);
+      throw e;
+    }
+    return updateTimes;
+  }
+
+  private static List<Database.CheckTableResult> checkTable(
+      Connection conn,
+      Database.Name databaseName,
+      TableName tableName
+  ) throws IOException, SQLException {
+    final String dbNamePrefix = databaseName.toString() + '.';
+    final long startTime = System.currentTimeMillis();
+    String currentSql = null;
+    try (
+        Statement stmt = conn.createStatement();
+        ResultSet results = stmt.executeQuery(currentSql = "CHECK TABLE `" + databaseName + "`.`" + tableName + "` FAST QUICK")
+        ) {
+      long duration = System.currentTimeMillis() - startTime;
+      if (duration < 0) {
+        // System time possibly reset
+        duration = 0;
+      }
+      final List<Database.CheckTableResult> tableResults = new ArrayList<>();
+      while (results.next()) {
+        try {
+          String table = results.getString("Table");
+          if (table.startsWith(dbNamePrefix)) {
+            table = table.substring(dbNamePrefix.length());
+          }
+          final String msgType = results.getString("Msg_type");
+          tableResults.add(
+              new Database.CheckTableResult(
+                  TableName.valueOf(table),
+                  duration,
+                  msgType == null ? null : Database.CheckTableResult.MsgType.valueOf(msgType),
+                  results.getString("Msg_text")
+              )
+          );
+        } catch (ValidationException e) {
+          throw new SQLException(e);
+        } catch (IllegalArgumentException err) {
+          throw new IOException(err);
+        }
+      }
+      return tableResults;
+    } catch (Error | RuntimeException | SQLException e) {
+      ErrorPrinter.addSql(e, currentSql);
+      throw e;
+    }
+  }
+
+  /**
+   * A check is successful when every result is a status, such as "OK" or "Table is already up to date".
+   */
+  private static boolean isSuccessful(List<Database.CheckTableResult> results) {
+    if (results.isEmpty()) {
+      return false;
+    }
+    for (Database.CheckTableResult result : results) {
+      if (result.getMsgType() != Database.CheckTableResult.MsgType.status) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies check results with a duration of zero, for results returned without checking the table.
+   */
+  private static List<Database.CheckTableResult> withoutDuration(List<Database.CheckTableResult> results) {
+    List<Database.CheckTableResult> copy = new ArrayList<>(results.size());
+    for (Database.CheckTableResult result : results) {
+      copy.add(
+          new Database.CheckTableResult(
+              result.getTable(),
+              0,
+              result.getMsgType(),
+              result.getMsgText()
+          )
+      );
+    }
+    return Collections.unmodifiableList(copy);
+  }
+
   /**
    * Checks all tables, times-out in one minute.
+   *
+   * <p>Tables are checked concurrently, up to {@link #CHECK_TABLES_CONCURRENCY} at a time per server across
+   * all calls, with each worker reusing one connection for all the tables it checks.  Connections come from
+   * the server's pool when not checking within a failover image.  Tables with an update time unchanged since
+   * their last successful check return the results of that check, with a duration of zero, without checking
+   * again.</p>
    */
   public static void checkTables(
       PosixPath failoverRoot,
@@ -768,11 +1040,29 @@ public final class MySQLDatabaseManager extends BuilderThread {
       List<TableName> tableNames,
       StreamableOutput out
   ) throws IOException, SQLException {
+    final AtomicBoolean stopped = new AtomicBoolean();
     Future<List<Database.CheckTableResult>> future = AoservDaemon.executorService.submit(() -> {
-      List<Database.CheckTableResult> allTableResults = new ArrayList<>();
-      for (final TableName tableName : tableNames) {
+      final int numTables = tableNames.size();
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      final List<Database.CheckTableResult>[] tableResults = new List[numTables];
+      final CheckTableConcurrencyKey[] keys = new CheckTableConcurrencyKey[numTables];
+      final long currentTime = System.currentTimeMillis();
+      final Server localServer = getLocalServer(failoverRoot, port);
+      // Find the tables that need to be checked
+      final Map<String, String> updateTimes;
+      try (Connection conn = getCheckTablesConnection(localServer, failoverRoot, nestedOperatingSystemVersion, serverName, port)) {
+        try {
+          updateTimes = getUpdateTimes(conn, databaseName);
+        } catch (SQLException e) {
+          conn.abort(AoservDaemon.executorService);
+          throw e;
+        }
+      }
+      final List<Integer> toCheck = new ArrayList<>(numTables);
+      for (int i = 0; i < numTables; i++) {
+        final TableName tableName = tableNames.get(i);
         if (!Database.isSafeName(tableName.toString())) {
-          allTableResults.add(
+          tableResults[i] = Collections.singletonList(
               new Database.CheckTableResult(
                   tableName,
                   0,
@@ -781,77 +1071,119 @@ public final class MySQLDatabaseManager extends BuilderThread {
               )
           );
         } else {
+          CheckTableConcurrencyKey key = new CheckTableConcurrencyKey(
+              failoverRoot,
+              // serverName, // Not needed, is already unique by port
+              port,
+              databaseName,
+              tableName
+          );
+          keys[i] = key;
+          String updateTime = updateTimes.get(tableName.toString());
+          SuccessfulCheck successfulCheck = successfulChecks.get(key);
+          if (
+              updateTime != null
+                  && successfulCheck != null
+                  && updateTime.equals(successfulCheck.updateTime)
+          ) {
+            successfulCheck.lastRequested = currentTime;
+            tableResults[i] = successfulCheck.results;
+          } else {
+            toCheck.add(i);
+          }
+        }
+      }
+      // Forget dropped tables in this database, and tables not requested recently
+      final Set<CheckTableConcurrencyKey> requested = new HashSet<>(Arrays.asList(keys));
+      successfulChecks.entrySet().removeIf(entry -> {
+        if (entry.getKey().isDatabase(failoverRoot, port, databaseName)) {
+          return !requested.contains(entry.getKey());
+        }
+        long age = currentTime - entry.getValue().lastRequested;
+        return age < 0 || age >= SUCCESSFUL_CHECK_MAX_AGE;
+      });
+      if (logger.isLoggable(Level.FINE)) {
+        logger.fine(databaseName + " on " + port + ": Checking " + toCheck.size() + " of " + numTables + " tables");
+      }
+      // Check tables concurrently, each worker with its own connection
+      final AtomicInteger nextToCheck = new AtomicInteger();
+      final int numWorkers = Math.min(CHECK_TABLES_CONCURRENCY, toCheck.size());
+      final Semaphore permits = checkTablesPermits.computeIfAbsent(
+          new CheckTablesServerKey(failoverRoot, port),
+          serverKey -> new Semaphore(CHECK_TABLES_CONCURRENCY)
+      );
+      List<Future<?>> workers = new ArrayList<>(numWorkers);
+      try {
+        for (int w = 0; w < numWorkers; w++) {
+          workers.add(AoservDaemon.executorService.submit(() -> {
+            // Wait for a permit, shared with other calls checking tables on this server
+            while (!permits.tryAcquire(CHECK_TABLES_PERMIT_POLL, TimeUnit.MILLISECONDS)) {
+              if (stopped.get() || nextToCheck.get() >= toCheck.size()) {
+                return null;
+              }
+            }
+            try (Connection conn = getCheckTablesConnection(localServer, failoverRoot, nestedOperatingSystemVersion, serverName, port)) {
+              try {
+                int next;
+                while (!stopped.get() && (next = nextToCheck.getAndIncrement()) < toCheck.size()) {
+                  final int i = toCheck.get(next);
+                  final TableName tableName = tableNames.get(i);
+                  final CheckTableConcurrencyKey key = keys[i];
+                  List<Database.CheckTableResult> results;
+                  try {
+                    results = checkTableLimiter.executeSerialized(
+                        key,
+                        () -> checkTable(conn, databaseName, tableName)
+                    );
+                  } catch (InterruptedException e) {
+                    // Restore the interrupted status
+                    Thread.currentThread().interrupt();
+                    throw new SQLException(e);
+                  } catch (ExecutionException e) {
+                    // Maintain expected exception types while not losing stack trace
+                    ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+                    ExecutionExceptions.wrapAndThrow(e, SQLException.class, SQLException::new);
+                    throw new SQLException(e);
+                  }
+                  tableResults[i] = results;
+                  String updateTime = updateTimes.get(tableName.toString());
+                  if (updateTime != null && isSuccessful(results)) {
+                    successfulChecks.put(key, new SuccessfulCheck(updateTime, withoutDuration(results), currentTime));
+                  } else {
+                    successfulChecks.remove(key);
+                  }
+                }
+              } catch (SQLException e) {
+                conn.abort(AoservDaemon.executorService);
+                throw e;
+              }
+            } finally {
+              permits.release();
+            }
+            return null;
+          }));
+        }
+        Throwable t0 = null;
+        for (Future<?> worker : workers) {
           try {
-            allTableResults.addAll(
-                checkTableLimiter.executeSerialized(
-                    new CheckTableConcurrencyKey(
-                        failoverRoot,
-                        // serverName, // Not needed, is already unique by port
-                        port,
-                        databaseName,
-                        tableName
-                    ),
-                    () -> {
-                      final String dbNamePrefix = databaseName.toString() + '.';
-                      final long startTime = System.currentTimeMillis();
-                      try (Connection conn = getMysqlConnection(failoverRoot, nestedOperatingSystemVersion, serverName, port)) {
-                        try {
-                          String currentSql = null;
-                          try (
-                              Statement stmt = conn.createStatement();
-                              ResultSet results = stmt.executeQuery(currentSql = "CHECK TABLE `" + databaseName + "`.`" + tableName + "` FAST QUICK")
-                              ) {
-                            long duration = System.currentTimeMillis() - startTime;
-                            if (duration < 0) {
-                              // System time possibly reset
-                              duration = 0;
-                            }
-                            final List<Database.CheckTableResult> tableResults = new ArrayList<>();
-                            while (results.next()) {
-                              try {
-                                String table = results.getString("Table");
-                                if (table.startsWith(dbNamePrefix)) {
-                                  table = table.substring(dbNamePrefix.length());
-                                }
-                                final String msgType = results.getString("Msg_type");
-                                tableResults.add(
-                                    new Database.CheckTableResult(
-                                        TableName.valueOf(table),
-                                        duration,
-                                        msgType == null ? null : Database.CheckTableResult.MsgType.valueOf(msgType),
-                                        results.getString("Msg_text")
-                                    )
-                                );
-                              } catch (ValidationException e) {
-                                throw new SQLException(e);
-                              } catch (IllegalArgumentException err) {
-                                throw new IOException(err);
-                              }
-                            }
-                            return tableResults;
-                          } catch (Error | RuntimeException | SQLException e) {
-                            ErrorPrinter.addSql(e, currentSql);
-                            throw e;
-                          }
-                        } catch (SQLException e) {
-                          conn.abort(AoservDaemon.executorService);
-                          throw e;
-                        }
-                      }
-                    }
-                )
-            );
-          } catch (InterruptedException e) {
-            // Restore the interrupted status
-            Thread.currentThread().interrupt();
-            throw new SQLException(e);
+            worker.get();
           } catch (ExecutionException e) {
-            // Maintain expected exception types while not losing stack trace
-            ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
-            ExecutionExceptions.wrapAndThrow(e, SQLException.class, SQLException::new);
-            throw new SQLException(e);
+            // Stop other workers on first failure
+            stopped.set(true);
+            t0 = Throwables.addSuppressed(t0, e.getCause());
           }
         }
+        if (t0 != null) {
+          ExecutionExceptions.wrapAndThrow(new ExecutionException(t0), IOException.class, IOException::new);
+          ExecutionExceptions.wrapAndThrow(new ExecutionException(t0), SQLException.class, SQLException::new);
+          throw new SQLException(t0);
+        }
+      } finally {
+        stopped.set(true);
+      }
+      List<Database.CheckTableResult> allTableResults = new ArrayList<>(numTables);
+      for (List<Database.CheckTableResult> results : tableResults) {
+        allTableResults.addAll(results);
       }
       return allTableResults;
     });
@@ -881,6 +1213,8 @@ public final class MySQLDatabaseManager extends BuilderThread {
       ExecutionExceptions.wrapAndThrow(e, SQLException.class, SQLException::new);
       throw new SQLException(e);
     } finally {
+      // Workers stop after their current table
+      stopped.set(true);
       future.cancel(false);
     }
   }
@@ -42,9 +42,13 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -179,6 +183,35 @@ public final class MySQLServerManager extends BuilderThread {
     }
   }
 
+  /**
+   * Gets the global status variables of a server through its connection pool.
+   *
+   * @return  the unmodifiable map of variable name to value, in the order returned by the server
+   */
+  public static Map<String, String> getGlobalStatus(Server ms) throws IOException, SQLException {
+    Map<String, String> status = new LinkedHashMap<>();
+    try (Connection conn = getPool(ms).getConnection(true)) {
+      try {
+        String currentSql = null;
+        try (
+            Statement stmt = conn.createStatement();
+            ResultSet results = stmt.executeQuery(currentSql = "SHOW GLOBAL STATUS")
+            ) {
+          while (results.next()) {
+            status.put(results.getString(1), results.getString(2));
+          }
+        } catch (Error | RuntimeException | SQLException e) {
+          ErrorPrinter.addSql(e, currentSql);
+          throw e;
+        }
+      } catch (SQLException e) {
+        conn.abort(AoservDaemon.executorService);
+        throw e;
+      }
+    }
+    return Collections.unmodifiableMap(status);
+  }
+
   private static MySQLServerManager mysqlServerManager;
 
   @SuppressWarnings("UseOfSystemOutOrSystemErr")
@@ -61,11 +61,17 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -505,15 +511,16 @@ public final class NetDeviceManager extends BuilderThread {
   /**
    * Reads a file, trims the whitespace, and parses it as a long.
    */
-  private static long readLongFile(File file, StringBuilder tempSb) throws IOException {
-    tempSb.setLength(0);
-    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
-      int ch;
-      while ((ch = in.read()) != -1) {
-        tempSb.append((char) ch); // Assuming ISO-8859-1
+  private static long readLongFile(File file, byte[] buff) throws IOException {
+    int len = 0;
+    try (InputStream in = new FileInputStream(file)) {
+      int ret;
+      while (len < buff.length && (ret = in.read(buff, len, buff.length - len)) != -1) {
+        len += ret;
       }
     }
-    return Long.parseLong(tempSb.toString().trim());
+    // Assuming ISO-8859-1
+    return Long.parseLong(new String(buff, 0, len, StandardCharsets.ISO_8859_1).trim());
   }
 
   /**
@@ -525,64 +532,234 @@ public final class NetDeviceManager extends BuilderThread {
    * this wrap and increment our own counter.  If the amount of increase is too much
    * for gigabit, then consider it a lower-level counter reset and reset our counter
    * to match the current value.
+   *
+   * <p>The same thread samples on all systems, recording the recent rates of each device
+   * in {@link DeviceStatistics#rates}.</p>
+   */
+  private static final long SAMPLE_INTERVAL = 5000;
+
+  /**
+   * The number of recent rates retained for each device, five minutes at {@link #SAMPLE_INTERVAL}.
    */
-  private static final Object _netDeviceStatisticsLock = new Object();
-  private static Thread _netDeviceStatisticsThread;
-  private static final Map<Device, Long> _lastTime = new HashMap<>();
-  private static final Map<Device, Long> _lastTxBytes = new HashMap<>();
-  private static final Map<Device, Long> _lastRxBytes = new HashMap<>();
-  private static final Map<Device, Long> _lastTxPackets = new HashMap<>();
-  private static final Map<Device, Long> _lastRxPackets = new HashMap<>();
-  private static final Map<Device, Long> _totalTxBytes = new HashMap<>();
-  private static final Map<Device, Long> _totalRxBytes = new HashMap<>();
-  private static final Map<Device, Long> _totalTxPackets = new HashMap<>();
-  private static final Map<Device, Long> _totalRxPackets = new HashMap<>();
+  private static final int RATE_HISTORY_SIZE = 60;
 
   private static final long MAX_GIGABIT_BIT_RATE = 2000000000L; // Allow twice gigabit speed before assuming counter reset
   private static final long MAX_GIGABIT_PACKET_RATE = MAX_GIGABIT_BIT_RATE / (64 * 8); // Smallest packet is 64 octets
   private static final long MAX_LINK_AGGREGATION = 4;
 
   /**
-   * Updates all of the counts to the current values.  This is called by
-   * getNetDeviceStatisticsReport to get up-to-date values, and also
-   * called by the 32-bit wraparound detection thread to catch wraparound.
-   *
-   * <p>All access to this method already synchronized on netDeviceStatisticsLock</p>
+   * The counters of one device at one point in time.  Instances are immutable and
+   * replaced atomically, so readers never block behind the sampling thread.
    */
-  private static void updateCounts(Device netDevice, StringBuilder tempSb) throws IOException, SQLException {
-    // Determine the statsDirectory
-    File statsDirectory;
-    OperatingSystemVersion osv = AoservDaemon.getThisServer().getHost().getOperatingSystemVersion();
-    int osvId = osv.getPkey();
-    if (
-        (
-            osvId == OperatingSystemVersion.CENTOS_5_DOM0_I686
-                || osvId == OperatingSystemVersion.CENTOS_5_DOM0_X86_64
-                || osvId == OperatingSystemVersion.CENTOS_7_DOM0_X86_64
-          ) && !netDevice.getDeviceId().getName().equals(DeviceId.LO)
+  private static final class Counters {
+
+    private final long time;
+    private final long rawTxBytes;
+    private final long rawRxBytes;
+    private final long rawTxPackets;
+    private final long rawRxPackets;
+    /**
+     * The totals, which are {@code -1} after a device reset is detected.
+     */
+    private final long totalTxBytes;
+    private final long totalRxBytes;
+    private final long totalTxPackets;
+    private final long totalRxPackets;
+
+    private Counters(
+        long time,
+        long rawTxBytes,
+        long rawRxBytes,
+        long rawTxPackets,
+        long rawRxPackets,
+        long totalTxBytes,
+        long totalRxBytes,
+        long totalTxPackets,
+        long totalRxPackets
     ) {
-      // Xen adds a "p" to the name or any device (except lo or non-xen devices)
-      statsDirectory = new File("/sys/class/net/p" + netDevice.getDeviceId().getName() + "/statistics");
-      // If doesn't exist, it is not a Xen-managed device, use its unaltered name
-      if (!statsDirectory.exists()) {
-        statsDirectory = new File("/sys/class/net/" + netDevice.getDeviceId().getName() + "/statistics");
-      }
-    } else {
-      statsDirectory = new File("/sys/class/net/" + netDevice.getDeviceId().getName() + "/statistics");
+      this.time = time;
+      this.rawTxBytes = rawTxBytes;
+      this.rawRxBytes = rawRxBytes;
+      this.rawTxPackets = rawTxPackets;
+      this.rawRxPackets = rawRxPackets;
+      this.totalTxBytes = totalTxBytes;
+      this.totalRxBytes = totalRxBytes;
+      this.totalTxPackets = totalTxPackets;
+      this.totalRxPackets = totalRxPackets;
+    }
+  }
+
+  /**
+   * The rates of one device between two samples.
+   */
+  public static final class Rate {
+
+    private final long timeEnd;
+    private final long timeSpan;
+    private final long txBitRate;
+    private final long rxBitRate;
+    private final long txPacketRate;
+    private final long rxPacketRate;
+
+    private Rate(long timeEnd, long timeSpan, long txBitRate, long rxBitRate, long txPacketRate, long rxPacketRate) {
+      this.timeEnd = timeEnd;
+      this.timeSpan = timeSpan;
+      this.txBitRate = txBitRate;
+      this.rxBitRate = rxBitRate;
+      this.txPacketRate = txPacketRate;
+      this.rxPacketRate = rxPacketRate;
+    }
+
+    /**
+     * Gets the time the sample ended, in milliseconds since the Epoch.
+     */
+    public long getTimeEnd() {
+      return timeEnd;
+    }
+
+    /**
+     * Gets the time between the samples, in milliseconds.
+     */
+    public long getTimeSpan() {
+      return timeSpan;
+    }
+
+    /**
+     * Gets the transmit rate in bits per second.
+     */
+    public long getTxBitRate() {
+      return txBitRate;
+    }
+
+    /**
+     * Gets the receive rate in bits per second.
+     */
+    public long getRxBitRate() {
+      return rxBitRate;
+    }
+
+    /**
+     * Gets the transmit rate in packets per second.
+     */
+    public long getTxPacketRate() {
+      return txPacketRate;
+    }
+
+    /**
+     * Gets the receive rate in packets per second.
+     */
+    public long getRxPacketRate() {
+      return rxPacketRate;
+    }
+  }
+
+  /**
+   * The counters and recent rates for one device.
+   */
+  private static final class DeviceStatistics {
+
+    private final File statsDirectory;
+    private final AtomicReference<Counters> counters = new AtomicReference<>();
+    private final AtomicReferenceArray<Rate> rates = new AtomicReferenceArray<>(RATE_HISTORY_SIZE);
+    private final AtomicLong ratesAdded = new AtomicLong();
+
+    private DeviceStatistics(File statsDirectory) {
+      this.statsDirectory = statsDirectory;
+    }
+
+    private void addRate(Rate rate) {
+      rates.set((int) (ratesAdded.getAndIncrement() % RATE_HISTORY_SIZE), rate);
     }
+  }
 
-    // Determine if on 64-bit system
-    boolean is64;
+  private static final ConcurrentMap<Device, DeviceStatistics> deviceStatistics = new ConcurrentHashMap<>();
+
+  private static final Object samplerThreadLock = new Object();
+  private static Thread samplerThread;
+
+  /**
+   * Determines if on a system with 64-bit counters.
+   */
+  private static boolean isCounters64() throws IOException {
     String osArch = System.getProperty("os.arch");
     if ("amd64".equals(osArch)) {
-      is64 = true;
+      return true;
     } else if ("i386".equals(osArch)) {
-      is64 = false;
+      return false;
     } else if ("i586".equals(osArch)) {
-      is64 = false;
+      return false;
     } else {
       throw new IOException("Unexpected value for os.arch: " + osArch);
     }
+  }
+
+  /**
+   * Gets the statistics for a device, creating when first needed.
+   */
+  private static DeviceStatistics getDeviceStatistics(Device netDevice) throws IOException, SQLException {
+    DeviceStatistics statistics = deviceStatistics.get(netDevice);
+    if (statistics == null) {
+      // Determine the statsDirectory
+      File statsDirectory;
+      OperatingSystemVersion osv = AoservDaemon.getThisServer().getHost().getOperatingSystemVersion();
+      int osvId = osv.getPkey();
+      if (
+          (
+              osvId == OperatingSystemVersion.CENTOS_5_DOM0_I686
+                  || osvId == OperatingSystemVersion.CENTOS_5_DOM0_X86_64
+                  || osvId == OperatingSystemVersion.CENTOS_7_DOM0_X86_64
+            ) && !netDevice.getDeviceId().getName().equals(DeviceId.LO)
+      ) {
+        // Xen adds a "p" to the name or any device (except lo or non-xen devices)
+        statsDirectory = new File("/sys/class/net/p" + netDevice.getDeviceId().getName() + "/statistics");
+        // If doesn't exist, it is not a Xen-managed device, use its unaltered name
+        if (!statsDirectory.exists()) {
+          statsDirectory = new File("/sys/class/net/" + netDevice.getDeviceId().getName() + "/statistics");
+        }
+      } else {
+        statsDirectory = new File("/sys/class/net/" + netDevice.getDeviceId().getName() + "/statistics");
+      }
+      statistics = new DeviceStatistics(statsDirectory);
+      DeviceStatistics existing = deviceStatistics.putIfAbsent(netDevice, statistics);
+      if (existing != null) {
+        statistics = existing;
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * Gets the increase in a counter, accounting for 32-bit wraparound.
+   */
+  private static long getIncrease(long current, long last, boolean is64) {
+    if (current >= last) {
+      return current - last;
+    } else if (is64) {
+      // Counter reset
+      return -1;
+    } else {
+      return current + 0x100000000L - last;
+    }
+  }
+
+  private static long getTotal(long oldTotal, long increase) {
+    return (oldTotal == -1 ? 0 : oldTotal) + increase;
+  }
+
+  /**
+   * Updates the counts of a device to the current values.  This is called by
+   * getNetDeviceStatisticsReport to get up-to-date values, and also
+   * called by the sampling thread to catch 32-bit wraparound and record rates.
+   *
+   * <p>The counters are replaced atomically.  When another thread has already stored a sample
+   * at least as new, this sample is discarded.</p>
+   *
+   * @param  buff  the buffer used to read the statistics files
+   *
+   * @return  the current counters
+   */
+  private static Counters updateCounts(Device netDevice, DeviceStatistics statistics, byte[] buff) throws IOException {
+    final boolean is64 = isCounters64();
 
     // Read the current raw values
     final long currentTime;
@@ -592,190 +769,180 @@ public final class NetDeviceManager extends BuilderThread {
     final long currentRxPackets;
     try {
       currentTime = System.currentTimeMillis();
-      currentTxBytes = readLongFile(new File(statsDirectory, "tx_bytes"), tempSb);
-      currentRxBytes = readLongFile(new File(statsDirectory, "rx_bytes"), tempSb);
-      currentTxPackets = readLongFile(new File(statsDirectory, "tx_packets"), tempSb);
-      currentRxPackets = readLongFile(new File(statsDirectory, "rx_packets"), tempSb);
+      File statsDirectory = statistics.statsDirectory;
+      currentTxBytes = readLongFile(new File(statsDirectory, "tx_bytes"), buff);
+      currentRxBytes = readLongFile(new File(statsDirectory, "rx_bytes"), buff);
+      currentTxPackets = readLongFile(new File(statsDirectory, "tx_packets"), buff);
+      currentRxPackets = readLongFile(new File(statsDirectory, "rx_packets"), buff);
     } catch (IOException err) {
       // If there is any IO exception, it may indicate the device has been completely shutdown
-      // and will reset its counters in the process
-      _lastTime.remove(netDevice);
-      _lastTxBytes.remove(netDevice);
-      _lastRxBytes.remove(netDevice);
-      _lastTxPackets.remove(netDevice);
-      _lastRxPackets.remove(netDevice);
-      _totalTxBytes.remove(netDevice);
-      _totalRxBytes.remove(netDevice);
-      _totalTxPackets.remove(netDevice);
-      _totalRxPackets.remove(netDevice);
+      // and will reset its counters in the process.  The counters are cleared in place, instead
+      // of removing the entry, so a concurrent caller never updates a record no longer in the map.
+      statistics.counters.set(null);
       throw err;
     }
 
-    // If on a 64-bit system, just copy the data directly
-    if (is64) {
-      _lastTime.put(netDevice, currentTime);
-      _totalTxBytes.put(netDevice, currentTxBytes);
-      _totalRxBytes.put(netDevice, currentRxBytes);
-      _totalTxPackets.put(netDevice, currentTxPackets);
-      _totalRxPackets.put(netDevice, currentRxPackets);
-    } else {
-      Long lastTime = _lastTime.get(netDevice);
-      Long lastTxBytes = _lastTxBytes.get(netDevice);
-      Long lastRxBytes = _lastRxBytes.get(netDevice);
-      Long lastTxPackets = _lastTxPackets.get(netDevice);
-      Long lastRxPackets = _lastRxPackets.get(netDevice);
-      if (lastTime == null || lastTxBytes == null || lastRxBytes == null || lastTxPackets == null || lastRxPackets == null) {
-        // If no previous value, initialize remove the totals to indicate device reset
-        _lastTime.put(netDevice, currentTime);
-        _lastTxBytes.put(netDevice, currentTxBytes);
-        _lastRxBytes.put(netDevice, currentRxBytes);
-        _lastTxPackets.put(netDevice, currentTxPackets);
-        _lastRxPackets.put(netDevice, currentRxPackets);
-        _totalTxBytes.remove(netDevice);
-        _totalRxBytes.remove(netDevice);
-        _totalTxPackets.remove(netDevice);
-        _totalRxPackets.remove(netDevice);
-      } else {
-        // Look for wraparound on txBytes
-        final Long totalTxBytesL = _totalTxBytes.get(netDevice);
-        final long oldTotalTxBytes = totalTxBytesL == null ? 0 : totalTxBytesL;
-        long newTotalTxBytes;
-        if (currentTxBytes >= lastTxBytes) {
-          newTotalTxBytes = oldTotalTxBytes + currentTxBytes - lastTxBytes;
-        } else {
-          // System.err.println("NetDeviceManager: tx_bytes wraparound detected on "+netDevice);
-          newTotalTxBytes = oldTotalTxBytes + currentTxBytes + 0x100000000L - lastTxBytes;
-        }
-
-        // Look for wraparound on rxBytes
-        final Long totalRxBytesL = _totalRxBytes.get(netDevice);
-        final long oldTotalRxBytes = totalRxBytesL == null ? 0 : totalRxBytesL;
-        long newTotalRxBytes;
-        if (currentRxBytes >= lastRxBytes) {
-          newTotalRxBytes = oldTotalRxBytes + currentRxBytes - lastRxBytes;
-        } else {
-          // System.err.println("NetDeviceManager: rx_bytes wraparound detected on "+netDevice);
-          newTotalRxBytes = oldTotalRxBytes + currentRxBytes + 0x100000000L - lastRxBytes;
-        }
-
-        // Look for wraparound on txPackets
-        final Long totalTxPacketsL = _totalTxPackets.get(netDevice);
-        final long oldTotalTxPackets = totalTxPacketsL == null ? 0 : totalTxPacketsL;
-        long newTotalTxPackets;
-        if (currentTxPackets >= lastTxPackets) {
-          newTotalTxPackets = oldTotalTxPackets + currentTxPackets - lastTxPackets;
+    while (true) {
+      final Counters old = statistics.counters.get();
+      if (old != null && old.time >= currentTime) {
+        // A sample at least as new has already been stored
+        return old;
+      }
+      final Counters current;
+      Rate rate = null;
+      if (old == null) {
+        if (is64) {
+          current = new Counters(
+              currentTime,
+              currentTxBytes, currentRxBytes, currentTxPackets, currentRxPackets,
+              currentTxBytes, currentRxBytes, currentTxPackets, currentRxPackets
+          );
         } else {
-          // System.err.println("NetDeviceManager: tx_packets wraparound detected on "+netDevice);
-          newTotalTxPackets = oldTotalTxPackets + currentTxPackets + 0x100000000L - lastTxPackets;
+          // If no previous value, initialize without totals to indicate device reset
+          current = new Counters(
+              currentTime,
+              currentTxBytes, currentRxBytes, currentTxPackets, currentRxPackets,
+              -1, -1, -1, -1
+          );
         }
-
-        // Look for wraparound on rxPackets
-        final Long totalRxPacketsL = _totalRxPackets.get(netDevice);
-        final long oldTotalRxPackets = totalRxPacketsL == null ? 0 : totalRxPacketsL;
-        long newTotalRxPackets;
-        if (currentRxPackets >= lastRxPackets) {
-          newTotalRxPackets = oldTotalRxPackets + currentRxPackets - lastRxPackets;
+      } else {
+        final long txBytes = getIncrease(currentTxBytes, old.rawTxBytes, is64);
+        final long rxBytes = getIncrease(currentRxBytes, old.rawRxBytes, is64);
+        final long txPackets = getIncrease(currentTxPackets, old.rawTxPackets, is64);
+        final long rxPackets = getIncrease(currentRxPackets, old.rawRxPackets, is64);
+        long timeDiff = currentTime - old.time;
+        if (is64) {
+          // Just copy the data directly
+          current = new Counters(
+              currentTime,
+              currentTxBytes, currentRxBytes, currentTxPackets, currentRxPackets,
+              currentTxBytes, currentRxBytes, currentTxPackets, currentRxPackets
+          );
         } else {
-          // System.err.println("NetDeviceManager: rx_packets wraparound detected on "+netDevice);
-          newTotalRxPackets = oldTotalRxPackets + currentRxPackets + 0x100000000L - lastRxPackets;
+          // Look for any indication of device reset
+          long resetTimeDiff = timeDiff;
+          if (resetTimeDiff < 1000) {
+            // Don't let math be thrown off by a very small divisor
+            resetTimeDiff = 1000;
+          }
+          if (
+              txBytes * 8 * 1000 / resetTimeDiff > (MAX_GIGABIT_BIT_RATE * MAX_LINK_AGGREGATION)
+                  || rxBytes * 8 * 1000 / resetTimeDiff > (MAX_GIGABIT_BIT_RATE * MAX_LINK_AGGREGATION)
+                  || txPackets * 8 * 1000 / resetTimeDiff > (MAX_GIGABIT_PACKET_RATE * MAX_LINK_AGGREGATION)
+                  || rxPackets * 8 * 1000 / resetTimeDiff > (MAX_GIGABIT_PACKET_RATE * MAX_LINK_AGGREGATION)
+          ) {
+            // Counter reset, remove totals to indicate reset
+            current = new Counters(
+                currentTime,
+                currentTxBytes, currentRxBytes, currentTxPackets, currentRxPackets,
+                -1, -1, -1, -1
+            );
+            timeDiff = 0;
+          } else {
+            current = new Counters(
+                currentTime,
+                currentTxBytes, currentRxBytes, currentTxPackets, currentRxPackets,
+                getTotal(old.totalTxBytes, txBytes),
+                getTotal(old.totalRxBytes, rxBytes),
+                getTotal(old.totalTxPackets, txPackets),
+                getTotal(old.totalRxPackets, rxPackets)
+            );
+          }
         }
-
-        // Look for any indication of device reset
-        long timeDiff = currentTime - lastTime;
-        if (timeDiff < 1000) {
-          // Don't let math be thrown off by a very small divisor
-          timeDiff = 1000;
+        if (timeDiff > 0 && txBytes != -1 && rxBytes != -1 && txPackets != -1 && rxPackets != -1) {
+          rate = new Rate(
+              currentTime,
+              timeDiff,
+              txBytes * 8 * 1000 / timeDiff,
+              rxBytes * 8 * 1000 / timeDiff,
+              txPackets * 1000 / timeDiff,
+              rxPackets * 1000 / timeDiff
+          );
         }
-        long currentTxBitRate = (newTotalTxBytes - oldTotalTxBytes) * 8 * 1000 / timeDiff;
-        long currentRxBitRate = (newTotalRxBytes - oldTotalRxBytes) * 8 * 1000 / timeDiff;
-        long currentTxPacketRate = (newTotalTxPackets - oldTotalTxPackets) * 8 * 1000 / timeDiff;
-        long currentRxPacketRate = (newTotalRxPackets - oldTotalRxPackets) * 8 * 1000 / timeDiff;
-        if (
-            currentTxBitRate > (MAX_GIGABIT_BIT_RATE * MAX_LINK_AGGREGATION)
-                || currentRxBitRate > (MAX_GIGABIT_BIT_RATE * MAX_LINK_AGGREGATION)
-                || currentTxPacketRate > (MAX_GIGABIT_PACKET_RATE * MAX_LINK_AGGREGATION)
-                || currentRxPacketRate > (MAX_GIGABIT_PACKET_RATE * MAX_LINK_AGGREGATION)
-        ) {
-          // Counter reset, remove totals to indicate reset
-          // System.err.println("NetDeviceManager: Device reset detected on "+netDevice);
-          _totalTxBytes.remove(netDevice);
-          _totalRxBytes.remove(netDevice);
-          _totalTxPackets.remove(netDevice);
-          _totalRxPackets.remove(netDevice);
-        } else {
-          _totalTxBytes.put(netDevice, newTotalTxBytes);
-          _totalRxBytes.put(netDevice, newTotalRxBytes);
-          _totalTxPackets.put(netDevice, newTotalTxPackets);
-          _totalRxPackets.put(netDevice, newTotalRxPackets);
+      }
+      if (statistics.counters.compareAndSet(old, current)) {
+        if (rate != null) {
+          statistics.addRate(rate);
         }
-
-        // Store result and counts for next iteration
-        _lastTime.put(netDevice, currentTime);
-        _lastTxBytes.put(netDevice, currentTxBytes);
-        _lastRxBytes.put(netDevice, currentRxBytes);
-        _lastTxPackets.put(netDevice, currentTxPackets);
-        _lastRxPackets.put(netDevice, currentRxPackets);
+        return current;
       }
     }
+  }
 
-    // On 32-bit systems, start the thread to automatically update this every 5 seconds
-    if (!is64 && _netDeviceStatisticsThread == null) {
-      _netDeviceStatisticsThread = new Thread("netDeviceStatisticsThread") {
-        @Override
-        @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch", "SleepWhileInLoop"})
-        public void run() {
-          // Reuse these two objects to reduce heap allocation
-          final List<Device> netDevices = new ArrayList<>();
-          final StringBuilder tempSb = new StringBuilder();
-          while (!Thread.currentThread().isInterrupted()) {
-            try {
-              netDevices.clear();
-              synchronized (_netDeviceStatisticsLock) {
-                netDevices.addAll(_lastTime.keySet());
-                for (Device netDevice : netDevices) {
+  /**
+   * Starts the thread that samples every device once per {@link #SAMPLE_INTERVAL}.
+   */
+  private static void startSamplerThread() {
+    synchronized (samplerThreadLock) {
+      if (samplerThread == null) {
+        samplerThread = new Thread("netDeviceStatisticsThread") {
+          @Override
+          @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch", "SleepWhileInLoop"})
+          public void run() {
+            // Reuse this buffer to reduce heap allocation
+            final byte[] buff = new byte[64];
+            while (!Thread.currentThread().isInterrupted()) {
+              try {
+                for (Map.Entry<Device, DeviceStatistics> entry : deviceStatistics.entrySet()) {
                   try {
-                    updateCounts(netDevice, tempSb);
+                    updateCounts(entry.getKey(), entry.getValue(), buff);
                   } catch (Throwable t) {
                     logger.log(Level.SEVERE, null, t);
                   }
                 }
+              } catch (Throwable t) {
+                logger.log(Level.SEVERE, null, t);
+              }
+              try {
+                Thread.sleep(SAMPLE_INTERVAL);
+              } catch (InterruptedException err) {
+                logger.log(Level.WARNING, null, err);
+                // Restore the interrupted status
+                Thread.currentThread().interrupt();
               }
-            } catch (Throwable t) {
-              logger.log(Level.SEVERE, null, t);
-            }
-            try {
-              Thread.sleep(5000);
-            } catch (InterruptedException err) {
-              logger.log(Level.WARNING, null, err);
-              // Restore the interrupted status
-              Thread.currentThread().interrupt();
             }
           }
-        }
-      };
-      _netDeviceStatisticsThread.start();
+        };
+        samplerThread.start();
+      }
     }
   }
 
   public static String getNetDeviceStatisticsReport(Device netDevice) throws IOException, SQLException {
-    StringBuilder tempSb = new StringBuilder((20 + 1) * 5); // ( max length of long = 20 + newline ) * 5 lines
-    synchronized (_netDeviceStatisticsLock) {
-      updateCounts(netDevice, tempSb);
-      Long totalTxBytes = _totalTxBytes.get(netDevice);
-      Long totalRxBytes = _totalRxBytes.get(netDevice);
-      Long totalTxPackets = _totalTxPackets.get(netDevice);
-      Long totalRxPackets = _totalRxPackets.get(netDevice);
-      tempSb.setLength(0);
-      tempSb
-          // Add the current system time so the bit rate calculations are unaffected by network latency
-          .append(_lastTime.get(netDevice)).append('\n')
-          // Add the counts
-          .append(totalTxBytes == null ? -1L : totalTxBytes).append('\n')
-          .append(totalRxBytes == null ? -1L : totalRxBytes).append('\n')
-          .append(totalTxPackets == null ? -1L : totalTxPackets).append('\n')
-          .append(totalRxPackets == null ? -1L : totalRxPackets).append('\n');
+    DeviceStatistics statistics = getDeviceStatistics(netDevice);
+    Counters counters = updateCounts(netDevice, statistics, new byte[64]);
+    startSamplerThread();
+    return new StringBuilder((20 + 1) * 5) // ( max length of long = 20 + newline ) * 5 lines
+        // Add the current system time so the bit rate calculations are unaffected by network latency
+        .append(counters.time).append('\n')
+        // Add the counts
+        .append(counters.totalTxBytes).append('\n')
+        .append(counters.totalRxBytes).append('\n')
+        .append(counters.totalTxPackets).append('\n')
+        .append(counters.totalRxPackets).append('\n')
+        .toString();
+  }
+
+  /**
+   * Gets the recent rates of a device, oldest first.  Rates are recorded once the device
+   * has been queried by {@link #getNetDeviceStatisticsReport(com.aoindustries.aoserv.client.net.Device)}.
+   *
+   * @return  the rates or an empty list when not being sampled
+   */
+  public static List<Rate> getNetDeviceRateHistory(Device netDevice) {
+    DeviceStatistics statistics = deviceStatistics.get(netDevice);
+    if (statistics == null) {
+      return Collections.emptyList();
+    }
+    List<Rate> history = new ArrayList<>(RATE_HISTORY_SIZE);
+    for (int i = 0; i < RATE_HISTORY_SIZE; i++) {
+      Rate rate = statistics.rates.get(i);
+      if (rate != null) {
+        history.add(rate);
+      }
     }
-    return tempSb.toString();
+    history.sort(Comparator.comparingLong(Rate::getTimeEnd));
+    return history;
   }
 
   private static final List<Integer> privilegedPorts = new ArrayList<>();
@@ -41,9 +41,13 @@ import java.io.PrintStream;
 import java.net.StandardProtocolFamily;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -130,17 +134,25 @@ public final class NullRouteManager {
     }
   }
 
-  static class NullRoute {
+  /**
+   * An immutable null route, replaced in {@link #nullRoutes} on each change so the writer thread may
+   * snapshot the routes without holding any shared lock.
+   */
+  static final class NullRoute {
     final int ip;
-    int level;
-    long startTime;
-    long endTime;
+    final int level;
+    final long startTime;
+    final long endTime;
 
-    NullRoute(int ip, long currentTime) {
+    private NullRoute(int ip, int level, long startTime, long endTime) {
       this.ip = ip;
-      this.level = 0;
-      this.startTime = currentTime;
-      this.endTime = currentTime + durations[level];
+      this.level = level;
+      this.startTime = startTime;
+      this.endTime = endTime;
+    }
+
+    NullRoute(int ip, long currentTime) {
+      this(ip, 0, currentTime, currentTime + durations[0]);
       if (DEBUG) {
         final PrintStream out = System.out;
         synchronized (out) {
@@ -152,14 +164,23 @@ public final class NullRouteManager {
       }
     }
 
+    /**
+     * Checks if this null route is currently in progress.
+     */
+    boolean isActive(long currentTime) {
+      return currentTime >= startTime && currentTime < endTime;
+    }
+
     /**
      * Decrement the null route level based on the amount of quiet time.
+     *
+     * @return  the null route with the reduced level or {@code this} when unchanged
      */
-    void reduceLevel(long currentTime) {
+    NullRoute reduceLevel(long currentTime) {
       // Check for system time set to past
       if (currentTime < startTime) {
         // System time reset to the past, start over
-        level = -1;
+        NullRoute reduced = new NullRoute(ip, -1, startTime, endTime);
         if (DEBUG) {
           final PrintStream out = System.out;
           synchronized (out) {
@@ -167,17 +188,20 @@ public final class NullRouteManager {
             out.print(": ");
             out.print(IpAddress.getIpAddressForInt(ip));
             out.print(": system time reset: level=");
-            out.println(level);
+            out.println(reduced.level);
           }
         }
+        return reduced;
       } else if (currentTime >= endTime) {
         long decrementLevels = (currentTime - endTime) / REDUCE_LEVEL_QUIET_TIME;
         assert decrementLevels >= 0;
         if (decrementLevels != 0) {
-          level -= Math.min(decrementLevels, durations.length);
-          if (level < -1) {
-            level = -1;
-          }
+          NullRoute reduced = new NullRoute(
+              ip,
+              (int) Math.max(level - Math.min(decrementLevels, durations.length), -1),
+              startTime,
+              endTime
+          );
           if (DEBUG) {
             final PrintStream out = System.out;
             synchronized (out) {
@@ -185,20 +209,21 @@ public final class NullRouteManager {
               out.print(": ");
               out.print(IpAddress.getIpAddressForInt(ip));
               out.print(": decremented: level=");
-              out.println(level);
+              out.println(reduced.level);
             }
           }
+          return reduced;
         }
       }
+      return this;
     }
 
     /**
      * Increases the null route level and starts a new null route time period.
      */
-    void increaseLevel(long currentTime) {
-      level = Math.min(level + 1, durations.length - 1);
-      startTime = currentTime;
-      endTime = currentTime + durations[level];
+    NullRoute increaseLevel(long currentTime) {
+      int newLevel = Math.min(level + 1, durations.length - 1);
+      NullRoute increased = new NullRoute(ip, newLevel, currentTime, currentTime + durations[newLevel]);
       if (DEBUG) {
         final PrintStream out = System.out;
         synchronized (out) {
@@ -206,21 +231,91 @@ public final class NullRouteManager {
           out.print(": ");
           out.print(IpAddress.getIpAddressForInt(ip));
           out.print(": incremented: level=");
-          out.println(level);
+          out.println(newLevel);
         }
       }
+      return increased;
     }
   }
 
-  private static final Map<Integer, NullRoute> nullRoutes = new LinkedHashMap<>();
+  /**
+   * The null routes, updated without blocking by {@link #addNullRoute(int)}.
+   * Only the writer thread performs file and process I/O, working from a snapshot.
+   */
+  private static final ConcurrentMap<Integer, NullRoute> nullRoutes = new ConcurrentHashMap<>();
+
+  /**
+   * Set whenever {@link #nullRoutes} is changed, cleared by the writer thread before each snapshot.
+   * Changes made while the writer is busy are coalesced into its next pass.
+   */
+  private static final AtomicBoolean changed = new AtomicBoolean(true);
 
   private static final Object threadLock = new Object();
-  private Thread thread;
+  private volatile Thread thread;
 
   private NullRouteManager() {
     // Do nothing
   }
 
+  /**
+   * Gets the null routes in progress, in address order, while cleaning-up entries.
+   */
+  private static List<NullRoute> getActiveNullRoutes(long currentTime) {
+    List<NullRoute> active = new ArrayList<>();
+    for (Integer ip : nullRoutes.keySet()) {
+      NullRoute nullRoute = nullRoutes.computeIfPresent(ip, (key, existing) -> {
+        if (existing.isActive(currentTime)) {
+          return existing;
+        }
+        NullRoute reduced = existing.reduceLevel(currentTime);
+        // Quiet long enough to remove entirely
+        return reduced.level < 0 ? null : reduced;
+      });
+      if (nullRoute != null && nullRoute.isActive(currentTime)) {
+        active.add(nullRoute);
+      }
+    }
+    active.sort((nr1, nr2) -> Integer.compareUnsigned(nr1.ip, nr2.ip));
+    return active;
+  }
+
+  /**
+   * Makes bird reload its configuration after {@link #BIRD_NULL_CONFIG} is updated.
+   * <p>
+   * The bird 1.x control socket has no command to add or withdraw an individual static route:
+   * static routes exist only in the configuration, and the <code>configure</code> command
+   * reparses the whole configuration just like the reload performed here.  Only the protocols
+   * whose configuration changed are restarted, so the BGP sessions are not reset.  A set of
+   * changes is applied with a single reconfiguration, since changes made while this is running
+   * are coalesced into the next pass of the writer thread.
+   * </p>
+   */
+  private static void reconfigureBird() throws IOException, SQLException {
+    Server thisServer = AoservDaemon.getThisServer();
+    OperatingSystemVersion osv = thisServer.getHost().getOperatingSystemVersion();
+    int osvId = osv.getPkey();
+    if (
+        osvId == OperatingSystemVersion.CENTOS_5_DOM0_I686
+            || osvId == OperatingSystemVersion.CENTOS_5_DOM0_X86_64
+    ) {
+      // kill -HUP bird if updated
+      int pid = VirtualServerManager.findPid("/opt/bird/sbin/bird\u0000-u\u0000bird\u0000-g\u0000bird");
+      if (pid == -1) {
+        logger.log(Level.SEVERE, "bird not running");
+      } else {
+        new LinuxProcess(pid).signal("HUP");
+      }
+    } else if (osvId == OperatingSystemVersion.CENTOS_7_DOM0_X86_64) {
+      try {
+        AoservDaemon.exec("/usr/bin/systemctl", "reload-or-try-restart", "bird-1.service");
+      } catch (IOException e) {
+        logger.log(Level.SEVERE, "Unable to reload bird configuration", e);
+      }
+    } else {
+      throw new AssertionError("Unsupported OperatingSystemVersion: " + osv);
+    }
+  }
+
   private void startThread() {
     synchronized (threadLock) {
       if (thread == null) {
@@ -230,96 +325,62 @@ public final class NullRouteManager {
             while (!Thread.currentThread().isInterrupted()) {
               try {
                 final StringBuilder newContents = new StringBuilder();
-                synchronized (nullRoutes) {
-                  while (!Thread.currentThread().isInterrupted()) {
-                    // Verify config file while cleaning-up entries
-                    newContents.setLength(0);
-                    final long currentTime = System.currentTimeMillis();
-                    long nearestEnding = Long.MAX_VALUE;
-                    Iterator<Map.Entry<Integer, NullRoute>> iter = nullRoutes.entrySet().iterator();
-                    while (iter.hasNext()) {
-                      Map.Entry<Integer, NullRoute> entry = iter.next();
-                      NullRoute nullRoute = entry.getValue();
-                      // If null route currently in progress, add to the output file
-                      if (currentTime >= nullRoute.startTime && currentTime < nullRoute.endTime) {
-                        String ipString = IpAddress.getIpAddressForInt(nullRoute.ip);
-                        InetAddress inetAddress = InetAddress.valueOf(ipString);
-                        assert inetAddress.getProtocolFamily().equals(StandardProtocolFamily.INET);
-                        // Never null-route private IP addresses, such as those used for communication between routers for BGP sessions
-                        if (!inetAddress.isUniqueLocal()) {
-                          newContents
-                              .append("route ")
-                              .append(ipString)
-                              .append("/32 drop;\n");
-                        }
-                        // Find the null route that expires next
-                        if (nullRoute.endTime < nearestEnding) {
-                          nearestEnding = nullRoute.endTime;
-                        }
-                      } else {
-                        nullRoute.reduceLevel(currentTime);
-                        if (nullRoute.level < 0) {
-                          // Quiet long enough to remove entirely
-                          iter.remove();
-                        }
-                      }
+                while (!Thread.currentThread().isInterrupted()) {
+                  // Clear before the snapshot so any concurrent change causes another pass
+                  changed.set(false);
+                  // Verify config file while cleaning-up entries
+                  newContents.setLength(0);
+                  final long currentTime = System.currentTimeMillis();
+                  long nearestEnding = Long.MAX_VALUE;
+                  for (NullRoute nullRoute : getActiveNullRoutes(currentTime)) {
+                    String ipString = IpAddress.getIpAddressForInt(nullRoute.ip);
+                    InetAddress inetAddress = InetAddress.valueOf(ipString);
+                    assert inetAddress.getProtocolFamily().equals(StandardProtocolFamily.INET);
+                    // Never null-route private IP addresses, such as those used for communication between routers for BGP sessions
+                    if (!inetAddress.isUniqueLocal()) {
+                      newContents
+                          .append("route ")
+                          .append(ipString)
+                          .append("/32 drop;\n");
                     }
-                    byte[] newBytes = newContents.toString().getBytes(StandardCharsets.UTF_8.name()); // .name() only for JDK < 1.6 compatibility
-                    // See if file has changed
-                    if (
-                        DaemonFileUtils.atomicWrite(
-                            BIRD_NULL_CONFIG,
-                            newBytes,
-                            0640,
-                            PosixFile.ROOT_UID,
-                            BIRD_GID, // TODO: Enable LinuxAccountManager on CentOS 7.dom0 and get this from the existing "bird" linux_server_group
-                            null,
-                            null // SELinux disabled on dom0
-                        )
-                    ) {
-                      Server thisServer = AoservDaemon.getThisServer();
-                      OperatingSystemVersion osv = thisServer.getHost().getOperatingSystemVersion();
-                      int osvId = osv.getPkey();
-                      if (
-                          osvId == OperatingSystemVersion.CENTOS_5_DOM0_I686
-                              || osvId == OperatingSystemVersion.CENTOS_5_DOM0_X86_64
-                      ) {
-                        // kill -HUP bird if updated
-                        int pid = VirtualServerManager.findPid("/opt/bird/sbin/bird\u0000-u\u0000bird\u0000-g\u0000bird");
-                        if (pid == -1) {
-                          logger.log(Level.SEVERE, "bird not running");
-                        } else {
-                          new LinuxProcess(pid).signal("HUP");
-                        }
-                      } else if (osvId == OperatingSystemVersion.CENTOS_7_DOM0_X86_64) {
-                        try {
-                          AoservDaemon.exec("/usr/bin/systemctl", "reload-or-try-restart", "bird-1.service");
-                        } catch (IOException e) {
-                          logger.log(Level.SEVERE, "Unable to reload bird configuration", e);
-                        }
-                      } else {
-                        throw new AssertionError("Unsupported OperatingSystemVersion: " + osv);
-                      }
+                    // Find the null route that expires next
+                    if (nullRoute.endTime < nearestEnding) {
+                      nearestEnding = nullRoute.endTime;
                     }
-                    // Wait until more action to take
+                  }
+                  byte[] newBytes = newContents.toString().getBytes(StandardCharsets.UTF_8.name()); // .name() only for JDK < 1.6 compatibility
+                  // See if file has changed
+                  if (
+                      DaemonFileUtils.atomicWrite(
+                          BIRD_NULL_CONFIG,
+                          newBytes,
+                          0640,
+                          PosixFile.ROOT_UID,
+                          BIRD_GID, // TODO: Enable LinuxAccountManager on CentOS 7.dom0 and get this from the existing "bird" linux_server_group
+                          null,
+                          null // SELinux disabled on dom0
+                      )
+                  ) {
+                    reconfigureBird();
+                  }
+                  // Wait until more action to take, unless changed during this pass
+                  if (!changed.get()) {
+                    long waitTime;
                     if (nearestEnding == Long.MAX_VALUE) {
-                      // No null routes active, wait indefinitely until notified
-                      nullRoutes.wait(MAX_WAIT_TIME);
+                      // No null routes active, wait indefinitely until signaled
+                      waitTime = MAX_WAIT_TIME;
                     } else {
-                      long waitTime = nearestEnding - System.currentTimeMillis();
+                      waitTime = nearestEnding - System.currentTimeMillis();
                       if (waitTime > MAX_WAIT_TIME) {
                         waitTime = MAX_WAIT_TIME;
                       }
-                      if (waitTime > 0) {
-                        nullRoutes.wait(waitTime);
-                      }
+                    }
+                    if (waitTime > 0) {
+                      // Returns early when signaled by addNullRoute or interrupted
+                      LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitTime));
                     }
                   }
                 }
-              } catch (InterruptedException err) {
-                logger.log(Level.SEVERE, null, err);
-                // Restore the interrupted status
-                Thread.currentThread().interrupt();
               } catch (Throwable t) {
                 logger.log(Level.SEVERE, null, t);
               }
@@ -341,32 +402,38 @@ public final class NullRouteManager {
 
   /**
    * Adds a new null route to the system.
+   * This never blocks on file or process I/O: the configuration is updated by a separate thread.
    */
   public static void addNullRoute(int nullingIp) {
-    final Integer ipObj = nullingIp;
     final long currentTime = System.currentTimeMillis();
-    synchronized (nullRoutes) {
+    final boolean[] updated = {false};
+    nullRoutes.compute(nullingIp, (ip, nullRoute) -> {
       // Look for an existing null route
-      NullRoute nullRoute = nullRoutes.get(ipObj);
       if (nullRoute != null) {
         // If null route currently in progress, ignore request
-        if (currentTime >= nullRoute.startTime && currentTime < nullRoute.endTime) {
-          // Ignore request
-          return;
+        if (nullRoute.isActive(currentTime)) {
+          return nullRoute;
         }
-        nullRoute.reduceLevel(currentTime);
-        if (nullRoute.level < 0) {
-          // Quiet long enough to start over
-          nullRoute = null;
-        } else {
+        nullRoute = nullRoute.reduceLevel(currentTime);
+        if (nullRoute.level >= 0) {
           // Increase level
-          nullRoute.increaseLevel(currentTime);
+          updated[0] = true;
+          return nullRoute.increaseLevel(currentTime);
         }
+        // Quiet long enough to start over
       }
-      if (nullRoute == null) {
-        nullRoutes.put(ipObj, new NullRoute(nullingIp, currentTime));
+      updated[0] = true;
+      return new NullRoute(nullingIp, currentTime);
+    });
+    if (updated[0]) {
+      changed.set(true);
+      NullRouteManager manager = instance;
+      if (manager != null) {
+        Thread t = manager.thread;
+        if (t != null) {
+          LockSupport.unpark(t);
+        }
       }
-      nullRoutes.notify(); // notifyAll() not needed: only a single thread waiting
     }
   }
 }
@@ -249,7 +249,10 @@ public final class Fail2banManager extends BuilderThread {
               logger.fine("jailPorts: " + jailPorts);
             }
 
+            // Set when jails or filters are added or removed, which requires all jails be reloaded
             boolean[] updated = {false};
+            // The jails that are still enabled but with different ports, which may be reloaded individually
+            Set<Jail> portsChanged = EnumSet.noneOf(Jail.class);
 
             // Install any missing packages
             boolean fail2banInstalled;
@@ -318,6 +321,7 @@ public final class Fail2banManager extends BuilderThread {
                     Strings.join(ports, ",", out);
                     out.print('\n');
                   }
+                  boolean jailExisted = jailPosixFile.getStat().exists();
                   if (
                       DaemonFileUtils.atomicWrite(
                           jailPosixFile,
@@ -329,7 +333,11 @@ public final class Fail2banManager extends BuilderThread {
                           restorecon
                       )
                   ) {
-                    updated[0] = true;
+                    if (jailExisted) {
+                      portsChanged.add(jail);
+                    } else {
+                      updated[0] = true;
+                    }
                   }
                 }
                 // Remove any old file that was at *.conf and now moved to *.local
@@ -373,11 +381,22 @@ public final class Fail2banManager extends BuilderThread {
               // Enable if needed
               AoservDaemon.exec("/usr/bin/systemctl", "enable", "fail2ban.service");
               if (updated[0]) {
-                // Restart if configuration updated
-                AoservDaemon.exec("/usr/bin/systemctl", "restart", "fail2ban.service");
+                // Reload all jails when jails added or removed, or start if not running
+                AoservDaemon.exec("/usr/bin/systemctl", "reload-or-restart", "fail2ban.service");
               } else {
                 // Start if not running
                 AoservDaemon.exec("/usr/bin/systemctl", "start", "fail2ban.service");
+                if (!portsChanged.isEmpty()) {
+                  // Reload only the jails with changed ports, which keeps their bans and log positions
+                  try {
+                    for (Jail jail : portsChanged) {
+                      AoservDaemon.exec("/usr/bin/fail2ban-client", "reload", jail.getName());
+                    }
+                  } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to reload individual jails, reloading all jails", e);
+                    AoservDaemon.exec("/usr/bin/systemctl", "reload-or-restart", "fail2ban.service");
+                  }
+                }
               }
             }
           } else {
@@ -28,6 +28,8 @@ import com.aoapps.encoding.EncodingContext;
 import com.aoapps.io.posix.PosixFile;
 import com.aoapps.net.InetAddress;
 import com.aoapps.net.Port;
+import com.aoapps.tempfiles.TempFile;
+import com.aoapps.tempfiles.TempFileContext;
 import com.aoindustries.aoserv.client.AoservConnector;
 import com.aoindustries.aoserv.client.distribution.OperatingSystemVersion;
 import com.aoindustries.aoserv.client.linux.Server;
@@ -41,17 +43,22 @@ import com.aoindustries.aoserv.daemon.util.DaemonFileUtils;
 import com.aoindustries.selinux.SEManagePort;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.ProtocolFamily;
 import java.net.StandardProtocolFamily;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -99,6 +106,20 @@ public final class SshdManager extends BuilderThread {
 
   private static final PosixFile SSHD_CONFIG = new PosixFile("/etc/ssh/sshd_config");
 
+  private static final PosixFile BINDS_CONF = new PosixFile("/etc/ssh/sshd_config.d/10-binds.conf");
+
+  /**
+   * The directive, as parsed by {@link #parseDirective(java.lang.String)}, that includes {@link #BINDS_CONF}
+   * from <code>sshd_config</code> on Rocky 9.
+   */
+  private static final String BINDS_INCLUDE = "include " + BINDS_CONF.getFile().getParent() + "/*.conf";
+
+  /**
+   * The directives, in lower-case, that change the sockets sshd listens on.  A change to any of
+   * these requires a restart, while all other changes are applied by reload.
+   */
+  private static final Set<String> LISTEN_DIRECTIVES = Set.of("listenaddress", "port", "addressfamily");
+
   /**
    * Uses same encoding as {@link ChainWriter}.
    */
@@ -501,6 +522,183 @@ public final class SshdManager extends BuilderThread {
     writeListenAddresses(nbs, out, MAX_LISTEN_SOCKS);
   }
 
+  /**
+   * The action required to apply a configuration change, from least to most disruptive.
+   */
+  enum ConfigChange {
+    NONE,
+    RELOAD,
+    RESTART;
+
+    /**
+     * Gets the more disruptive of this and another change.
+     */
+    ConfigChange max(ConfigChange other) {
+      return other.compareTo(this) > 0 ? other : this;
+    }
+  }
+
+  /**
+   * Reads the current contents of a configuration file.
+   *
+   * @return  the contents or {@code null} when the file does not exist
+   */
+  private static byte[] readConfig(PosixFile file) throws IOException {
+    File f = file.getFile();
+    return f.exists() ? Files.readAllBytes(f.toPath()) : null;
+  }
+
+  /**
+   * Parses one line of a configuration, ignoring keyword case and the whitespace or equals sign
+   * separating a keyword from its arguments.
+   *
+   * @return  the directive or {@code null} for comments and blank lines
+   */
+  private static String parseDirective(String line) {
+    line = line.trim();
+    if (line.isEmpty() || line.charAt(0) == '#') {
+      return null;
+    }
+    String[] words = line.split("\\s*=\\s*|\\s+", 2);
+    String keyword = words[0].toLowerCase(Locale.ROOT);
+    return words.length == 1 ? keyword : (keyword + ' ' + words[1].trim());
+  }
+
+  /**
+   * Parses a configuration into its directives, in order, ignoring comments, blank lines, keyword
+   * case, and the whitespace or equals sign separating a keyword from its arguments.
+   */
+  static List<String> parseDirectives(byte[] config) {
+    List<String> directives = new ArrayList<>();
+    if (config != null) {
+      for (String line : new String(config, ENCODING).split("\n")) {
+        String directive = parseDirective(line);
+        if (directive != null) {
+          directives.add(directive);
+        }
+      }
+    }
+    return directives;
+  }
+
+  private static List<String> getListenDirectives(List<String> directives) {
+    List<String> listenDirectives = new ArrayList<>();
+    for (String directive : directives) {
+      int space = directive.indexOf(' ');
+      if (LISTEN_DIRECTIVES.contains(space == -1 ? directive : directive.substring(0, space))) {
+        listenDirectives.add(directive);
+      }
+    }
+    return listenDirectives;
+  }
+
+  /**
+   * Compares the directives of the old and new configurations to find how the change must be applied.
+   * Changes only in comments or formatting require no action.
+   */
+  static ConfigChange getConfigChange(byte[] oldConfig, byte[] newConfig) {
+    if (oldConfig == null) {
+      return ConfigChange.RESTART;
+    }
+    List<String> oldDirectives = parseDirectives(oldConfig);
+    List<String> newDirectives = parseDirectives(newConfig);
+    if (oldDirectives.equals(newDirectives)) {
+      return ConfigChange.NONE;
+    }
+    return getListenDirectives(oldDirectives).equals(getListenDirectives(newDirectives))
+        ? ConfigChange.RELOAD
+        : ConfigChange.RESTART;
+  }
+
+  /**
+   * Builds the configuration used to validate a new <code>sshd_config</code> together with a new
+   * {@link #BINDS_CONF}.  The <code>Include</code> of <code>sshd_config.d</code> is expanded to each of
+   * its files, in the same order as sshd, with {@link #BINDS_CONF} replaced by the new binds.  When
+   * there is no such <code>Include</code>, the new binds are included first.
+   *
+   * @param  confFiles  the paths of the files currently in <code>sshd_config.d</code>
+   * @param  bindsPath  the path of the new binds
+   */
+  static byte[] getValidationConfig(byte[] config, SortedSet<String> confFiles, String bindsPath) {
+    SortedSet<String> includes = new TreeSet<>(confFiles);
+    includes.add(BINDS_CONF.getPath());
+    StringBuilder validationConfig = new StringBuilder();
+    boolean found = false;
+    for (String line : new String(config, ENCODING).split("\n")) {
+      if (BINDS_INCLUDE.equals(parseDirective(line))) {
+        found = true;
+        for (String include : includes) {
+          validationConfig.append("Include ").append(include.equals(BINDS_CONF.getPath()) ? bindsPath : include).append('\n');
+        }
+      } else {
+        validationConfig.append(line).append('\n');
+      }
+    }
+    if (!found) {
+      validationConfig.insert(0, "Include " + bindsPath + '\n');
+    }
+    return validationConfig.toString().getBytes(ENCODING);
+  }
+
+  private static void writeTempFile(TempFile tempFile, byte[] contents) throws IOException {
+    PosixFile testFile = new PosixFile(tempFile.getFile());
+    testFile.setMode(0600);
+    try (FileOutputStream out = new FileOutputStream(testFile.getFile())) {
+      out.write(contents);
+    }
+  }
+
+  /**
+   * Validates a configuration with <code>sshd -t</code> before it is put into place, so an invalid
+   * configuration never replaces a working one.  The configuration is tested from temporary files in
+   * <code>/etc/ssh</code>, outside any <code>Include</code> pattern.
+   *
+   * @param  bindsConf  the new {@link #BINDS_CONF}, tested together with the configuration,
+   *                    or {@code null} when not used on this operating system
+   *
+   * @throws  IOException  when sshd rejects the configuration
+   */
+  private static void validateConfig(byte[] config, byte[] bindsConf) throws IOException {
+    try (
+        TempFileContext tempFileContext = new TempFileContext(SSHD_CONFIG.getFile().getParentFile());
+        TempFile tempFile = tempFileContext.createTempFile("sshd_config.", ".new");
+        TempFile tempBindsFile = bindsConf == null ? null : tempFileContext.createTempFile("10-binds.conf.", ".new")
+        ) {
+      if (tempBindsFile != null) {
+        writeTempFile(tempBindsFile, bindsConf);
+        SortedSet<String> confFiles = new TreeSet<>();
+        File[] list = BINDS_CONF.getFile().getParentFile().listFiles();
+        if (list != null) {
+          for (File confFile : list) {
+            if (confFile.getName().endsWith(".conf")) {
+              confFiles.add(confFile.getPath());
+            }
+          }
+        }
+        config = getValidationConfig(config, confFiles, tempBindsFile.getFile().getPath());
+      }
+      writeTempFile(tempFile, config);
+      AoservDaemon.exec("/usr/sbin/sshd", "-t", "-f", tempFile.getFile().getPath());
+    }
+  }
+
+  /**
+   * Writes a configuration file when its contents have changed.
+   *
+   * @return  how the change must be applied
+   */
+  private static ConfigChange writeConfig(PosixFile file, byte[] newConfig, Set<PosixFile> restorecon) throws IOException {
+    byte[] oldConfig = readConfig(file);
+    if (!DaemonFileUtils.atomicWrite(file, newConfig, 0600, PosixFile.ROOT_UID, PosixFile.ROOT_GID, null, restorecon)) {
+      return ConfigChange.NONE;
+    }
+    ConfigChange change = getConfigChange(oldConfig, newConfig);
+    if (logger.isLoggable(Level.INFO)) {
+      logger.info(file + " updated, " + change.name().toLowerCase(Locale.ROOT) + " required");
+    }
+    return change;
+  }
+
   private static final Object rebuildLock = new Object();
 
   @Override
@@ -540,8 +738,8 @@ public final class SshdManager extends BuilderThread {
           // if (nbs.size() > MAX_LISTEN_SOCKS) {
           //   throw new IOException("Refusing to build sshd_config with more than MAX_LISTEN_SOCKS(" + MAX_LISTEN_SOCKS + ") ListenAddress directives: " + nbs.size());
           // }
-          // Restart only when something changed
-          boolean[] needsRestart = {false};
+          // Reload or restart only when something changed
+          ConfigChange[] configChange = {ConfigChange.NONE};
           // Install openssh-server package if missing (when there is at least one port)
           if (!nbs.isEmpty()) {
             PackageManager.installPackage(
@@ -556,7 +754,7 @@ public final class SshdManager extends BuilderThread {
                   } else {
                     throw new AssertionError("Unsupported OperatingSystemVersion: " + osv);
                   }
-                  needsRestart[0] = true;
+                  configChange[0] = ConfigChange.RESTART;
                 }
             );
             // Install sshd-after-network-online package when needed
@@ -566,6 +764,8 @@ public final class SshdManager extends BuilderThread {
               PackageManager.installPackage(PackageManager.PackageName.SSHD_AFTER_NETWORK_ONLINE);
             }
           }
+          // Host keys are not generated until the first start, so a new installation cannot be validated
+          final boolean validate = configChange[0] != ConfigChange.RESTART;
           boolean isSshInstalled = PackageManager.getInstalledPackage(PackageManager.PackageName.OPENSSH_SERVER) != null;
           if (!nbs.isEmpty() && !isSshInstalled) {
             throw new AssertionError(PackageManager.PackageName.OPENSSH_SERVER + " not installed");
@@ -576,6 +776,12 @@ public final class SshdManager extends BuilderThread {
             // In this case, the SSH daemon will be configured with no ListenAddress, which will default to
             // listening on all IPs should sshd be re-enable by the administrator.
 
+            if (osvId == OperatingSystemVersion.ROCKY_9_X86_64) {
+              // Install aoserv-sshd-config package before overwriting with specific configuration
+              PackageManager.installPackage(PackageManager.PackageName.AOSERV_SSHD_CONFIG,
+                  () -> configChange[0] = ConfigChange.RESTART);
+            }
+
             // Build the new config file to RAM
             byte[] newConfig;
             {
@@ -594,48 +800,32 @@ public final class SshdManager extends BuilderThread {
               newConfig = bout.toByteArray();
             }
 
-            // Write the new file only when file changed
-            if (
-                DaemonFileUtils.atomicWrite(
-                    SSHD_CONFIG,
-                    newConfig,
-                    0600,
-                    PosixFile.ROOT_UID,
-                    PosixFile.ROOT_GID,
-                    null,
-                    restorecon
-                )
-            ) {
-              needsRestart[0] = true;
-            }
+            // Build the new binds file to RAM
+            byte[] newBindsConf;
             if (osvId == OperatingSystemVersion.ROCKY_9_X86_64) {
-              // Install aoserv-sshd-config package before overwriting with specific configuration
-              PackageManager.installPackage(PackageManager.PackageName.AOSERV_SSHD_CONFIG,
-                  () -> needsRestart[0] = true);
-              // Build the new config file to RAM
-              byte[] newBindsConf;
-              {
-                ByteArrayOutputStream bout = new ByteArrayOutputStream();
-                try (ChainWriter out = new ChainWriter(bout)) {
-                  writeBindsRocky9(nbs, out);
-                }
-                newBindsConf = bout.toByteArray();
+              ByteArrayOutputStream bout = new ByteArrayOutputStream();
+              try (ChainWriter out = new ChainWriter(bout)) {
+                writeBindsRocky9(nbs, out);
               }
-              // Write the new file only when file changed
-              if (
-                  DaemonFileUtils.atomicWrite(
-                      new PosixFile("/etc/ssh/sshd_config.d/10-binds.conf"),
-                      newBindsConf,
-                      0600,
-                      PosixFile.ROOT_UID,
-                      PosixFile.ROOT_GID,
-                      null,
-                      restorecon
-                  )
-              ) {
-                needsRestart[0] = true;
+              newBindsConf = bout.toByteArray();
+            } else {
+              newBindsConf = null;
+            }
+
+            // Validate both files together before writing either
+            if (validate) {
+              boolean changed = !Arrays.equals(readConfig(SSHD_CONFIG), newConfig)
+                  || (newBindsConf != null && !Arrays.equals(readConfig(BINDS_CONF), newBindsConf));
+              if (changed) {
+                validateConfig(newConfig, newBindsConf);
               }
             }
+
+            // Write the new files only when changed
+            configChange[0] = configChange[0].max(writeConfig(SSHD_CONFIG, newConfig, restorecon));
+            if (newBindsConf != null) {
+              configChange[0] = configChange[0].max(writeConfig(BINDS_CONF, newBindsConf, restorecon));
+            }
           }
 
           // SELinux before next steps
@@ -667,7 +857,7 @@ public final class SshdManager extends BuilderThread {
             }
             // Reconfigure SELinux ports
             if (SEManagePort.configure(sshPorts, SELINUX_TYPE)) {
-              needsRestart[0] = true;
+              configChange[0] = ConfigChange.RESTART;
             }
           } else {
             throw new AssertionError("Unsupported OperatingSystemVersion: " + osv);
@@ -688,7 +878,7 @@ public final class SshdManager extends BuilderThread {
               } else {
                 throw new AssertionError("Unsupported OperatingSystemVersion: " + osv);
               }
-            } else if (needsRestart[0]) {
+            } else if (configChange[0] != ConfigChange.NONE) {
               if (osvId == OperatingSystemVersion.CENTOS_5_I686_AND_X86_64) {
                 // Try reload config first
                 try {
@@ -723,8 +913,12 @@ public final class SshdManager extends BuilderThread {
               } else if (osvId == OperatingSystemVersion.CENTOS_7_X86_64
                   || osvId == OperatingSystemVersion.ROCKY_9_X86_64) {
                 AoservDaemon.exec("/usr/bin/systemctl", "enable", "sshd.service");
-                // TODO: Should this be reload-or-restart?
-                AoservDaemon.exec("/usr/bin/systemctl", "restart", "sshd.service");
+                // Reload keeps established sessions and in-progress logins; restart only to change listening sockets
+                AoservDaemon.exec(
+                    "/usr/bin/systemctl",
+                    configChange[0] == ConfigChange.RESTART ? "restart" : "reload-or-restart",
+                    "sshd.service"
+                );
               } else {
                 throw new AssertionError("Unsupported OperatingSystemVersion: " + osv);
               }
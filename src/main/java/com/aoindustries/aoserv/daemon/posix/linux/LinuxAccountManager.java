@@ -30,11 +30,11 @@ import com.aoapps.hodgepodge.util.Tuple2;
 import com.aoapps.io.posix.PosixFile;
 import com.aoapps.io.posix.Stat;
 import com.aoapps.lang.SysExits;
+import com.aoapps.lang.io.IoUtils;
+import com.aoapps.lang.io.NullOutputStream;
 import com.aoapps.lang.util.BufferManager;
 import com.aoapps.lang.util.ErrorPrinter;
 import com.aoapps.lang.validation.ValidationException;
-import com.aoapps.tempfiles.TempFile;
-import com.aoapps.tempfiles.TempFileContext;
 import com.aoindustries.aoserv.client.AoservConnector;
 import com.aoindustries.aoserv.client.distribution.OperatingSystemVersion;
 import com.aoindustries.aoserv.client.linux.Group;
@@ -64,11 +64,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
@@ -211,6 +209,10 @@ public final class LinuxAccountManager extends BuilderThread {
             synchronized (GroupFile.groupLock) {
               groupFile = GroupFile.readGroupFile();
             }
+            Set<Group.Name> lsgNames = AoCollections.newHashSet(lsgs.size());
+            for (GroupServer lsg : lsgs) {
+              lsgNames.add(lsg.getLinuxGroup().getName());
+            }
             boolean modified = false;
             for (GroupFile.Entry entry : groupFile.values()) {
               Group.Name groupName = entry.getGroupName();
@@ -229,14 +231,7 @@ public final class LinuxAccountManager extends BuilderThread {
                       // Amazon EC2 cloud-init
                       || groupName.equals(Group.ROCKY)
               ) {
-                boolean found = false;
-                for (GroupServer lsg : lsgs) {
-                  if (lsg.getLinuxGroup().getName().equals(groupName)) {
-                    found = true;
-                    break;
-                  }
-                }
-                if (!found) {
+                if (!lsgNames.contains(groupName)) {
                   int gid = entry.getGid();
                   if (logger.isLoggable(Level.FINE)) {
                     logger.fine("Adding system group: " + groupName + " #" + gid);
@@ -256,6 +251,10 @@ public final class LinuxAccountManager extends BuilderThread {
             synchronized (PasswdFile.passwdLock) {
               passwdFile = PasswdFile.readPasswdFile();
             }
+            Set<User.Name> lsaUsernames = AoCollections.newHashSet(lsas.size());
+            for (UserServer lsa : lsas) {
+              lsaUsernames.add(lsa.getLinuxAccount().getUsername().getUsername());
+            }
             boolean modified = false;
             for (PasswdFile.Entry entry : passwdFile.values()) {
               User.Name username = entry.getUsername();
@@ -274,14 +273,7 @@ public final class LinuxAccountManager extends BuilderThread {
                       // Amazon EC2 cloud-init
                       || username.equals(User.ROCKY)
               ) {
-                boolean found = false;
-                for (UserServer lsa : lsas) {
-                  if (lsa.getLinuxAccount().getUsername().getUsername().equals(username)) {
-                    found = true;
-                    break;
-                  }
-                }
-                if (!found) {
+                if (!lsaUsernames.contains(username)) {
                   int uid = entry.getUid();
                   if (logger.isLoggable(Level.FINE)) {
                     logger.fine("Adding system user: " + username + " #" + uid);
@@ -474,6 +466,8 @@ public final class LinuxAccountManager extends BuilderThread {
               synchronized (GroupFile.groupLock) {
                 synchronized (GshadowFile.gshadowLock) {
                   // Build new file contents
+                  // Each file is reconciled against its own current contents by map key, since the four files may
+                  // drift independently (manual edits, partial writes); a single shared diff would miss that drift.
                   final byte[] newPasswdContent = PasswdFile.buildPasswdFile(passwdEntries, uidMin, uidMax);
                   final byte[] newShadowContent = ShadowFile.buildShadowFile(usernames);
                   final byte[] newGroupContent = GroupFile.buildGroupFile(groupEntries, gidMin, gidMax);
@@ -1181,79 +1175,96 @@ public final class LinuxAccountManager extends BuilderThread {
     }
   }
 
+  /**
+   * Streams a tar of the home directory directly from the tar process, without staging the archive on disk.
+   */
   public static void tarHomeDirectory(StreamableOutput out, User.Name username) throws IOException, SQLException {
     UserServer lsa = AoservDaemon.getThisServer().getLinuxServerAccount(username);
     PosixPath home = lsa.getHome();
-    try (
-        TempFileContext tempFileContext = new TempFileContext();
-        TempFile tempFile = tempFileContext.createTempFile("tar_home_directory_", ".tar")
-        ) {
-      AoservDaemon.exec(
-          "/bin/tar",
-          "-c",
-          "-C",
-          home.toString(),
-          "-f",
-          tempFile.getFile().getPath(),
-          "."
-      );
-      try (InputStream in = new FileInputStream(tempFile.getFile())) {
-        byte[] buff = BufferManager.getBytes();
-        try {
-          int ret;
-          while ((ret = in.read(buff, 0, BufferManager.BUFFER_SIZE)) != -1) {
-            out.writeByte(AoservDaemonProtocol.NEXT);
-            out.writeShort(ret);
-            out.write(buff, 0, ret);
+    AoservDaemon.execRun(
+        tarIn -> {
+          byte[] buff = BufferManager.getBytes();
+          try {
+            int ret;
+            while ((ret = tarIn.read(buff, 0, BufferManager.BUFFER_SIZE)) != -1) {
+              out.writeByte(AoservDaemonProtocol.NEXT);
+              out.writeShort(ret);
+              out.write(buff, 0, ret);
+            }
+          } finally {
+            BufferManager.release(buff, false);
           }
-        } finally {
-          BufferManager.release(buff, false);
-        }
-      }
-    }
+        },
+        "/bin/tar",
+        "-c",
+        "-C",
+        home.toString(),
+        "-f",
+        "-",
+        "."
+    );
   }
 
+  /**
+   * Streams a tar into the home directory directly to the tar process, without staging the archive on disk.
+   *
+   * <p>Should tar stop accepting input early, the remainder of the archive is still read from the client
+   * so the protocol remains in sync, then the error is reported.</p>
+   */
   public static void untarHomeDirectory(StreamableInput in, User.Name username) throws IOException, SQLException {
     Server thisServer = AoservDaemon.getThisServer();
-    int uidMin = thisServer.getUidMin().getId();
-    int gidMin = thisServer.getGidMin().getId();
     synchronized (rebuildLock) {
       UserServer lsa = thisServer.getLinuxServerAccount(username);
       PosixPath home = lsa.getHome();
-      try (
-          TempFileContext tempFileContext = new TempFileContext();
-          TempFile tempFile = tempFileContext.createTempFile("untar_home_directory_", ".tar")
-          ) {
-        int code;
-        try (OutputStream out = new FileOutputStream(tempFile.getFile())) {
-          byte[] buff = BufferManager.getBytes();
-          try {
-            while ((code = in.readByte()) == AoservDaemonProtocol.NEXT) {
-              int len = in.readShort();
-              in.readFully(buff, 0, len);
-              out.write(buff, 0, len);
-            }
-          } finally {
-            BufferManager.release(buff, false);
-          }
-        }
-        if (code != AoservDaemonProtocol.DONE) {
-          if (code == AoservDaemonProtocol.IO_EXCEPTION) {
-            throw new IOException(in.readUTF());
-          } else if (code == AoservDaemonProtocol.SQL_EXCEPTION) {
-            throw new SQLException(in.readUTF());
-          } else {
-            throw new IOException("Unknown result: " + code);
-          }
-        }
-        AoservDaemon.exec(
+      String[] sqlError = new String[1];
+      try {
+        AoservDaemon.execRun(
+            tarOut -> {
+              IOException writeError = null;
+              int code;
+              byte[] buff = BufferManager.getBytes();
+              try {
+                while ((code = in.readByte()) == AoservDaemonProtocol.NEXT) {
+                  int len = in.readShort();
+                  in.readFully(buff, 0, len);
+                  if (writeError == null) {
+                    try {
+                      tarOut.write(buff, 0, len);
+                    } catch (IOException e) {
+                      writeError = e;
+                    }
+                  }
+                }
+              } finally {
+                BufferManager.release(buff, false);
+              }
+              if (code != AoservDaemonProtocol.DONE) {
+                if (code == AoservDaemonProtocol.IO_EXCEPTION) {
+                  throw new IOException(in.readUTF());
+                } else if (code == AoservDaemonProtocol.SQL_EXCEPTION) {
+                  sqlError[0] = in.readUTF();
+                  throw new IOException(sqlError[0]);
+                } else {
+                  throw new IOException("Unknown result: " + code);
+                }
+              }
+              if (writeError != null) {
+                throw writeError;
+              }
+            },
+            tarStdout -> IoUtils.copy(tarStdout, NullOutputStream.getInstance()),
             "/bin/tar",
             "-x",
             "-C",
             home.toString(),
             "-f",
-            tempFile.getFile().getPath()
+            "-"
         );
+      } catch (IOException e) {
+        if (sqlError[0] != null) {
+          throw new SQLException(sqlError[0], e);
+        }
+        throw e;
       }
     }
   }
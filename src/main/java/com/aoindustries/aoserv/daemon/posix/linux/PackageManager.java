@@ -31,10 +31,15 @@ import com.aoindustries.aoserv.daemon.AoservDaemon;
 import com.aoindustries.aoserv.daemon.AoservDaemonConfiguration;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -747,9 +752,19 @@ public final class PackageManager {
     }
   }
 
-  private static final Object packagesLock = new Object();
-  private static DirectoryMetaSnapshot lastSnapshot;
+  static final Object packagesLock = new Object();
+  /**
+   * Only written while holding {@link #packagesLock}, but read without the lock by
+   * {@link #getInstalledPackageCached(com.aoindustries.aoserv.daemon.posix.linux.PackageManager.PackageName)}.
+   * Always assigned after {@link #lastRpmsByName}, so a reader that sees a snapshot also sees the RPMs it describes.
+   */
+  private static volatile DirectoryMetaSnapshot lastSnapshot;
   private static SortedSet<Rpm> lastAllRpms;
+  /**
+   * The installed RPMs indexed by name, each list in ascending order.
+   * Rebuilt along with {@link #lastAllRpms}.
+   */
+  private static volatile Map<String, List<Rpm>> lastRpmsByName;
 
   /**
    * Gets the set of all packages installed on the server.  Because
@@ -830,11 +845,15 @@ public final class PackageManager {
           }
           logger.finer(message.toString());
         }
-        lastSnapshot = currentDirectorySnapshot;
         // When list hasn't changed, use old list and do not call listeners
         if (!newAllRpms.equals(lastAllRpms)) {
           SortedSet<Rpm> unmodifiableAllRpms = Collections.unmodifiableSortedSet(newAllRpms);
+          Map<String, List<Rpm>> newRpmsByName = new HashMap<>();
+          for (Rpm rpm : newAllRpms) {
+            newRpmsByName.computeIfAbsent(rpm.getName(), name -> new ArrayList<>(1)).add(rpm);
+          }
           lastAllRpms = unmodifiableAllRpms;
+          lastRpmsByName = newRpmsByName;
           if (logger.isLoggable(Level.FINE)) {
             StringBuilder message = new StringBuilder();
             message.append("Got all RPMs:");
@@ -851,23 +870,30 @@ public final class PackageManager {
         } else {
           logger.fine("RPMs not changed");
         }
+        lastSnapshot = currentDirectorySnapshot;
       }
       return lastAllRpms;
     }
   }
 
+  /**
+   * Gets all installed versions of a package, in ascending order.
+   */
+  private static List<Rpm> getInstalledRpms(PackageName name) throws IOException {
+    synchronized (packagesLock) {
+      getAllRpms();
+      List<Rpm> rpms = lastRpmsByName.get(name.rpmName);
+      return (rpms == null) ? Collections.emptyList() : Collections.unmodifiableList(rpms);
+    }
+  }
+
   /**
    * Gets the highest version of an installed package or <code>null</code> if
    * not installed.
    */
   public static Rpm getInstalledPackage(PackageName name) throws IOException {
-    // Looking through all to find highest version
-    Rpm highestVersionFound = null;
-    for (Rpm rpm : getAllRpms()) {
-      if (rpm.getName().equals(name.rpmName)) {
-        highestVersionFound = rpm;
-      }
-    }
+    List<Rpm> rpms = getInstalledRpms(name);
+    Rpm highestVersionFound = rpms.isEmpty() ? null : rpms.get(rpms.size() - 1);
     if (logger.isLoggable(Level.FINER)) {
       if (highestVersionFound == null) {
         logger.finer("No installed package found for " + name);
@@ -878,6 +904,150 @@ public final class PackageManager {
     return highestVersionFound;
   }
 
+  /**
+   * Gets the highest version of an installed package from the cached package list, without acquiring
+   * {@link #packagesLock}.  This allows requests to check for installed packages, and join the next
+   * transaction when missing, while another thread holds the lock for a yum transaction.
+   *
+   * @return  the highest version installed or {@code null} when not installed or the cache is not current,
+   *          in which case the caller must check again while holding {@link #packagesLock}
+   */
+  private static Rpm getInstalledPackageCached(PackageName name) throws IOException {
+    DirectoryMetaSnapshot snapshot = lastSnapshot;
+    if (snapshot == null) {
+      return null;
+    }
+    Map<String, List<Rpm>> rpmsByName = lastRpmsByName;
+    // A running rpm or yum changes /var/lib/rpm, which will not match the snapshot
+    if (!new DirectoryMetaSnapshot(VAR_LIB_RPM).equals(snapshot)) {
+      return null;
+    }
+    List<Rpm> rpms = rpmsByName.get(name.rpmName);
+    return (rpms == null) ? null : rpms.get(rpms.size() - 1);
+  }
+
+  /**
+   * A set of packages installed together in a single yum transaction.
+   * Packages requested while another transaction is running are gathered into the next transaction,
+   * which is run by whichever requesting thread first acquires {@link #packagesLock}.
+   */
+  static final class InstallTransaction {
+    /**
+     * Only modified while holding {@link #pendingInstallLock} and this is the {@link #pendingInstall}.
+     */
+    final Set<PackageName> packageNames = EnumSet.noneOf(PackageName.class);
+
+    // The remaining fields are only accessed while holding packagesLock
+    boolean done;
+    final Set<PackageName> installed = EnumSet.noneOf(PackageName.class);
+    final Map<PackageName, IOException> failures = new EnumMap<>(PackageName.class);
+  }
+
+  static final Object pendingInstallLock = new Object();
+  static InstallTransaction pendingInstall;
+
+  /**
+   * Adds packages to the transaction that will run next.
+   */
+  private static InstallTransaction enqueueInstall(Iterable<PackageName> packageNames) {
+    synchronized (pendingInstallLock) {
+      InstallTransaction transaction = pendingInstall;
+      if (transaction == null) {
+        transaction = new InstallTransaction();
+        pendingInstall = transaction;
+      }
+      for (PackageName packageName : packageNames) {
+        transaction.packageNames.add(packageName);
+      }
+      return transaction;
+    }
+  }
+
+  private static void yumInstall(Iterable<PackageName> packageNames) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add(YUM_EXE_PATH);
+    command.add("-q");
+    command.add("-y");
+    command.add("install");
+    for (PackageName packageName : packageNames) {
+      command.add(packageName.rpmName);
+    }
+    AoservDaemon.exec(command.toArray(new String[command.size()]));
+  }
+
+  /**
+   * Runs the transaction, when not already run by another thread.
+   * Should the combined transaction fail, each package is retried on its own
+   * so one bad package does not fail the requests of others.
+   *
+   * <p>Must hold {@link #packagesLock}.</p>
+   */
+  private static void runInstall(InstallTransaction transaction) {
+    assert Thread.holdsLock(packagesLock);
+    if (transaction.done) {
+      return;
+    }
+    synchronized (pendingInstallLock) {
+      // Stop accepting new packages into this transaction
+      if (pendingInstall == transaction) {
+        pendingInstall = null;
+      }
+    }
+    transaction.done = true;
+    List<PackageName> toInstall = new ArrayList<>(transaction.packageNames.size());
+    for (PackageName packageName : transaction.packageNames) {
+      try {
+        if (getInstalledPackage(packageName) == null) {
+          toInstall.add(packageName);
+        }
+      } catch (IOException e) {
+        transaction.failures.put(packageName, e);
+      }
+    }
+    if (!toInstall.isEmpty()) {
+      if (logger.isLoggable(Level.INFO)) {
+        logger.info("Installing " + (toInstall.size() == 1 ? "package: " : "packages: ") + toInstall);
+      }
+      try {
+        yumInstall(toInstall);
+        transaction.installed.addAll(toInstall);
+      } catch (IOException e) {
+        if (toInstall.size() == 1) {
+          transaction.failures.put(toInstall.get(0), e);
+        } else {
+          logger.log(Level.WARNING, "Combined install failed, installing individually: " + toInstall, e);
+          for (PackageName packageName : toInstall) {
+            try {
+              yumInstall(Collections.singleton(packageName));
+              transaction.installed.add(packageName);
+            } catch (IOException e2) {
+              transaction.failures.put(packageName, e2);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the highest version installed after a transaction.
+   *
+   * <p>Must hold {@link #packagesLock}.</p>
+   */
+  private static Rpm getInstalledAfter(InstallTransaction transaction, PackageName name) throws IOException {
+    assert Thread.holdsLock(packagesLock);
+    IOException failure = transaction.failures.get(name);
+    if (failure != null) {
+      throw new IOException("Unable to install package: " + name.rpmName, failure);
+    }
+    // Must exist now
+    Rpm rpm = getInstalledPackage(name);
+    if (rpm == null) {
+      throw new AssertionError("Package does not exist after yum install: " + name.rpmName);
+    }
+    return rpm;
+  }
+
   /**
    * Installs a package if it is not currently installed.
    * If the package is already installed, no action is taken.
@@ -893,7 +1063,8 @@ public final class PackageManager {
   /**
    * Installs a package if it is not currently installed.
    * If the package is already installed, no action is taken.
-   * The package is installed with "yum -q -y install $NAME".
+   * The package is installed with "yum -q -y install $NAME", along with any other
+   * packages requested concurrently.
    * If multiple packages are already installed, the highest version is returned.
    *
    * @param onInstall  Called when the RPM is actually installed.  Not called if already installed.
@@ -901,62 +1072,67 @@ public final class PackageManager {
    * @return  the highest version of RPM that is installed
    */
   public static Rpm installPackage(PackageName name, IORunnable onInstall) throws IOException {
+    // Check if exists before joining a transaction, without waiting on any transaction in progress
+    Rpm highestVersionFound = getInstalledPackageCached(name);
+    if (highestVersionFound != null) {
+      return highestVersionFound;
+    }
+    // Checked again by runInstall while holding packagesLock
+    InstallTransaction transaction = enqueueInstall(Collections.singleton(name));
     synchronized (packagesLock) {
-      // Check if exists by looking through all to find highest version
-      Rpm highestVersionFound = getInstalledPackage(name);
-      if (highestVersionFound != null) {
-        return highestVersionFound;
-      }
-      // Install with yum
-      if (logger.isLoggable(Level.INFO)) {
-        logger.info("Installing package: " + name.rpmName);
-      }
-      AoservDaemon.exec(
-          YUM_EXE_PATH,
-          "-q",
-          "-y",
-          "install",
-          name.rpmName
-      );
-      if (onInstall != null) {
+      runInstall(transaction);
+      Rpm rpm = getInstalledAfter(transaction, name);
+      if (onInstall != null && transaction.installed.contains(name)) {
         onInstall.run();
       }
-      // Must exist now
-      for (Rpm rpm : getAllRpms()) {
-        if (rpm.getName().equals(name.rpmName)) {
-          return rpm;
-        }
-      }
-      throw new AssertionError("Package does not exist after yum install: " + name.rpmName);
+      return rpm;
     }
   }
 
   /**
-   * Installs all of the packages that are not currently installed.
+   * Installs all of the packages that are not currently installed, in a single yum transaction.
    * If a package is already installed, no action is taken for that package.
    *
    * @see  PackageManager#installPackage(com.aoindustries.aoserv.daemon.unix.linux.PackageManager.PackageName)
    */
   public static void installPackages(Iterable<PackageName> packageNames) throws IOException {
-    synchronized (packagesLock) {
-      for (PackageName packageName : packageNames) {
-        installPackage(packageName);
+    List<PackageName> missing = new ArrayList<>();
+    for (PackageName packageName : packageNames) {
+      if (getInstalledPackageCached(packageName) == null) {
+        missing.add(packageName);
+      }
+    }
+    if (!missing.isEmpty()) {
+      InstallTransaction transaction = enqueueInstall(missing);
+      synchronized (packagesLock) {
+        runInstall(transaction);
+        IOException failure = null;
+        for (PackageName packageName : missing) {
+          try {
+            getInstalledAfter(transaction, packageName);
+          } catch (IOException e) {
+            if (failure == null) {
+              failure = e;
+            } else {
+              failure.addSuppressed(e);
+            }
+          }
+        }
+        if (failure != null) {
+          throw failure;
+        }
       }
     }
   }
 
   /**
-   * Installs all of the packages that are not currently installed.
+   * Installs all of the packages that are not currently installed, in a single yum transaction.
    * If a package is already installed, no action is taken for that package.
    *
    * @see  PackageManager#installPackage(com.aoindustries.aoserv.daemon.unix.linux.PackageManager.PackageName)
    */
   public static void installPackages(PackageName... packageNames) throws IOException {
-    synchronized (packagesLock) {
-      for (PackageName packageName : packageNames) {
-        installPackage(packageName);
-      }
-    }
+    installPackages(Arrays.asList(packageNames));
   }
 
   /**
@@ -973,12 +1149,7 @@ public final class PackageManager {
       throw new IllegalStateException("Package uninstall is disabled in aoserv-daemon.properties");
     }
     synchronized (packagesLock) {
-      List<Rpm> matches = new ArrayList<>();
-      for (Rpm rpm : getAllRpms()) {
-        if (rpm.getName().equals(name.rpmName)) {
-          matches.add(rpm);
-        }
-      }
+      List<Rpm> matches = getInstalledRpms(name);
       if (!matches.isEmpty()) {
         if (matches.size() > 1) {
           throw new IOException("More than one installed RPM matches, refusing to remove: " + name);
@@ -28,7 +28,6 @@ import com.aoapps.cron.CronJob;
 import com.aoapps.cron.Schedule;
 import com.aoapps.hodgepodge.io.stream.StreamableOutput;
 import com.aoapps.io.posix.PosixFile;
-import com.aoapps.lang.util.BufferManager;
 import com.aoapps.lang.util.ErrorPrinter;
 import com.aoapps.lang.validation.ValidationException;
 import com.aoapps.tempfiles.TempFile;
@@ -47,10 +46,9 @@ import com.aoindustries.aoserv.daemon.backup.BackupManager;
 import com.aoindustries.aoserv.daemon.client.AoservDaemonProtocol;
 import com.aoindustries.aoserv.daemon.posix.linux.PackageManager;
 import com.aoindustries.aoserv.daemon.util.BuilderThread;
+import com.aoindustries.aoserv.daemon.util.DaemonFileUtils;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -63,6 +61,8 @@ import java.util.Calendar;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -311,54 +311,59 @@ public final class PostgresDatabaseManager extends BuilderThread implements Cron
     }
   }
 
+  /**
+   * Dumps a database to the daemon protocol.
+   *
+   * <p>Clients before {@link AoservDaemonProtocol.Version#VERSION_1_80_0} receive the dump directly from the
+   * standard output of <code>dump_postgres_database</code>, chunk by chunk while <code>pg_dump</code> runs.</p>
+   *
+   * <p>Newer clients expect the dump size ahead of its contents.  Since that size is only known after
+   * <code>pg_dump</code> finishes, their dumps are staged in a temporary file.</p>
+   */
   public static void dumpDatabase(
       Database pd,
       AoservDaemonProtocol.Version protocolVersion,
       StreamableOutput masterOut,
       boolean gzip
   ) throws IOException, SQLException {
-    try (
-        TempFileContext tempFileContext = new TempFileContext();
-        TempFile tempFile = tempFileContext.createTempFile("dump_postgres_database_", gzip ? ".sql.gz" : ".sql")
-        ) {
-      dumpDatabase(
-          pd.getPostgresServer(),
-          pd.getName(),
-          tempFile.getFile(),
-          gzip
+    Server ps = pd.getPostgresServer();
+    Database.Name dbName = pd.getName();
+    if (protocolVersion.compareTo(AoservDaemonProtocol.Version.VERSION_1_80_0) < 0) {
+      String[] command = getDumpCommand(ps, dbName, "/dev/stdout", gzip);
+      long[] bytesWritten = {0};
+      AoservDaemon.execRun(
+          dumpin -> bytesWritten[0] = DaemonFileUtils.writeChunks(dumpin, -1, masterOut),
+          WORKING_DIRECTORY,
+          command
       );
-      long dumpSize = new PosixFile(tempFile.getFile()).getStat().getSize();
-      if (protocolVersion.compareTo(AoservDaemonProtocol.Version.VERSION_1_80_0) >= 0) {
-        masterOut.writeLong(dumpSize);
+      if (bytesWritten[0] == 0) {
+        throw new SQLException("Empty dump\nCommand: " + AoservDaemon.getCommandString(command));
       }
-      long bytesRead = 0;
-      try (InputStream dumpin = new FileInputStream(tempFile.getFile())) {
-        byte[] buff = BufferManager.getBytes();
-        try {
-          int ret;
-          while ((ret = dumpin.read(buff, 0, BufferManager.BUFFER_SIZE)) != -1) {
-            bytesRead += ret;
-            if (bytesRead > dumpSize) {
-              throw new IOException("Too many bytes read: " + bytesRead + " > " + dumpSize);
-            }
-            masterOut.writeByte(AoservDaemonProtocol.NEXT);
-            masterOut.writeShort(ret);
-            masterOut.write(buff, 0, ret);
-          }
-        } finally {
-          BufferManager.release(buff, false);
-        }
-      }
-      if (bytesRead < dumpSize) {
-        throw new IOException("Too few bytes read: " + bytesRead + " < " + dumpSize);
+    } else {
+      try (
+          TempFileContext tempFileContext = new TempFileContext();
+          TempFile tempFile = tempFileContext.createTempFile("dump_postgres_database_", gzip ? ".sql.gz" : ".sql")
+          ) {
+        dumpDatabase(
+            ps,
+            dbName,
+            tempFile.getFile(),
+            gzip
+        );
+        long dumpSize = new PosixFile(tempFile.getFile()).getStat().getSize();
+        masterOut.writeLong(dumpSize);
+        DaemonFileUtils.writeChunks(tempFile.getFile(), dumpSize, masterOut);
       }
     }
   }
 
-  private static void dumpDatabase(
+  /**
+   * Gets the command to run <code>dump_postgres_database</code>, installing any packages it requires.
+   */
+  private static String[] getDumpCommand(
       Server ps,
       Database.Name dbName,
-      File output,
+      String outputPath,
       boolean gzip
   ) throws IOException, SQLException {
     String commandPath;
@@ -380,14 +385,23 @@ public final class PostgresDatabaseManager extends BuilderThread implements Cron
     if (gzip) {
       PackageManager.installPackage(PackageManager.PackageName.GZIP);
     }
-    String[] command = {
+    return new String[]{
         commandPath,
         ps.getVersion().getMinorVersion(),
         Integer.toString(ps.getBind().getPort().getPort()),
         dbName.toString(),
-        output.getPath(),
+        outputPath,
         Boolean.toString(gzip)
     };
+  }
+
+  private static void dumpDatabase(
+      Server ps,
+      Database.Name dbName,
+      File output,
+      boolean gzip
+  ) throws IOException, SQLException {
+    String[] command = getDumpCommand(ps, dbName, output.getPath(), gzip);
     AoservDaemon.exec(WORKING_DIRECTORY, command);
     if (output.length() == 0) {
       throw new SQLException("Empty dump file: " + output + "\nCommand: " + AoservDaemon.getCommandString(command));
@@ -473,7 +487,80 @@ public final class PostgresDatabaseManager extends BuilderThread implements Cron
     return Thread.NORM_PRIORITY + 2;
   }
 
+  /**
+   * Tables with fewer estimated excess pages are not vacuumed.
+   */
+  private static final long MIN_BLOAT_PAGES = 128;
+
+  /**
+   * Tables with fewer estimated excess pages, as a percentage of all their pages, are not vacuumed.
+   */
+  private static final long MIN_BLOAT_PERCENT = 20;
+
+  /**
+   * The space used by each row in addition to its data: the tuple header, with alignment, and its line pointer.
+   */
+  private static final int ROW_OVERHEAD = 24 + 4;
+
+  /**
+   * The space used by each page in addition to its rows.
+   */
+  private static final int PAGE_OVERHEAD = 24;
+
+  /**
+   * Estimates if a table has enough excess space to be worth a VACUUM FULL, comparing its pages with
+   * the pages its rows would fill when tightly packed.  The estimate uses only the planner statistics in
+   * <code>pg_class</code> and <code>pg_stats</code>, which are not cleared by a statistics reset or by
+   * autovacuum.
+   *
+   * @param  relPages  <code>pg_class.relpages</code>
+   * @param  relTuples  <code>pg_class.reltuples</code>
+   * @param  rowWidth  the sum of <code>pg_stats.avg_width</code> over the columns of the table,
+   *                   or <code>-1</code> when the table has not been analyzed
+   * @param  blockSize  the <code>block_size</code> setting of the server
+   *
+   * @return  {@code true} when bloated, or when the statistics are not reliable enough to tell
+   */
+  static boolean isBloated(long relPages, double relTuples, long rowWidth, int blockSize) {
+    if (
+        rowWidth < 0
+            // Never vacuumed or analyzed: -1 since PostgreSQL 14, both zero before
+            || relTuples < 0
+            || (relPages == 0 && relTuples == 0)
+    ) {
+      return true;
+    }
+    long expectedPages = (long) Math.ceil(relTuples * (rowWidth + ROW_OVERHEAD) / (blockSize - PAGE_OVERHEAD));
+    long bloatPages = relPages - expectedPages;
+    return
+        bloatPages >= MIN_BLOAT_PAGES
+            && bloatPages * 100 >= relPages * MIN_BLOAT_PERCENT;
+  }
+
+  /**
+   * Checks if a PostgreSQL version is at least the given major and minor version.
+   *
+   * @return  {@code false} when the version cannot be parsed
+   */
+  private static boolean isVersionAtLeast(String version, int major, int minor) {
+    String[] parts = version.split("\\.");
+    try {
+      int versionMajor = Integer.parseInt(parts[0]);
+      if (versionMajor != major) {
+        return versionMajor > major;
+      }
+      return parts.length > 1 && Integer.parseInt(parts[1]) >= minor;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
   // TODO: This should be moved to scripts in the relevant postgresql-* packages, so the system still works correctly with disabled aoserv-daemon
+  /**
+   * Databases of each server are maintained in parallel, up to
+   * {@link AoservDaemonConfiguration#getPostgresMaintenanceConcurrency(com.aoindustries.aoserv.client.postgresql.Server.Name)}
+   * at a time.
+   */
   @Override
   @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
   public void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
@@ -482,8 +569,6 @@ public final class PostgresDatabaseManager extends BuilderThread implements Cron
       // DatabaseTable postgresDatabaseTable = aoservConn.getPostgresql().getDatabase();
       // Only REINDEX on the first Sunday of the month
       boolean isReindexTime = dayOfMonth <= 7;
-      List<String> tableNames = new ArrayList<>();
-      List<String> schemas = new ArrayList<>();
       for (Server postgresServer : AoservDaemon.getThisServer().getPostgresServers()) {
         Server.Name serverName = postgresServer.getName();
         String postgresServerVersion = postgresServer.getVersion().getTechnologyVersion(aoservConn).getVersion();
@@ -492,115 +577,214 @@ public final class PostgresDatabaseManager extends BuilderThread implements Cron
                 && !postgresServerVersion.startsWith(Version.VERSION_7_2 + '.');
         boolean postgresServerHasVacuumFull =
             !postgresServerVersion.startsWith(Version.VERSION_7_1 + '.');
+        // Bloat is estimated from pg_class and pg_stats, along with the block_size setting
+        boolean postgresServerHasBloatEstimate = isVersionAtLeast(postgresServerVersion, 8, 3);
+        // VACUUM FULL rewrites the table and rebuilds its indexes since 9.0
+        boolean postgresServerVacuumFullReindexes = isVersionAtLeast(postgresServerVersion, 9, 0);
+        List<Database> postgresDatabases = new ArrayList<>();
         for (Database postgresDatabase : postgresServer.getPostgresDatabases()) {
           if (
               !postgresDatabase.isTemplate()
                   && postgresDatabase.allowsConnections()
           ) {
-            Connection conn;
-            if (postgresDatabase.getName().equals(Database.AOSERV)) {
-              // If the aoserv database, use the existing connection pools
-              conn = PostgresServerManager.getPool(postgresServer).getConnection();
-            } else {
-              // For other databases, establish a connection directly
-              Class.forName(postgresDatabase.getJdbcDriver());
-              conn = DriverManager.getConnection(
-                  postgresDatabase.getJdbcUrl(true),
-                  User.POSTGRES.toString(),
-                  AoservDaemonConfiguration.getPostgresPassword(serverName)
-              );
-              conn.setAutoCommit(true);
-            }
-            try {
+            postgresDatabases.add(postgresDatabase);
+          }
+        }
+        final int numWorkers = Math.min(
+            Math.max(1, AoservDaemonConfiguration.getPostgresMaintenanceConcurrency(serverName)),
+            postgresDatabases.size()
+        );
+        final AtomicInteger nextDatabase = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>(numWorkers);
+        for (int w = 0; w < numWorkers; w++) {
+          workers.add(AoservDaemon.executorService.submit(() -> {
+            int next;
+            while ((next = nextDatabase.getAndIncrement()) < postgresDatabases.size()) {
+              Database postgresDatabase = postgresDatabases.get(next);
               try {
-                try (
-                    PreparedStatement pstmt = conn.prepareStatement(
-                        postgresServerHasSchemas
-                            ? "SELECT tablename, schemaname FROM pg_tables WHERE tableowner != ?"
-                            : "SELECT tablename FROM pg_tables WHERE tableowner != ?"
-                    )
-                    ) {
-                  try {
-                    pstmt.setString(1, User.POSTGRES.toString());
-                    try (ResultSet results = pstmt.executeQuery()) {
-                      tableNames.clear();
-                      if (postgresServerHasSchemas) {
-                        schemas.clear();
-                      }
-                      while (results.next()) {
-                        tableNames.add(results.getString(1));
-                        if (postgresServerHasSchemas) {
-                          schemas.add(results.getString(2));
-                        }
-                      }
-                    }
-                  } catch (Error | RuntimeException | SQLException e) {
-                    ErrorPrinter.addSql(e, pstmt);
-                    throw e;
-                  }
+                maintainDatabase(
+                    postgresServer,
+                    postgresDatabase,
+                    postgresServerHasSchemas,
+                    postgresServerHasVacuumFull,
+                    postgresServerHasBloatEstimate,
+                    postgresServerVacuumFullReindexes,
+                    isReindexTime
+                );
+              } catch (Throwable t) {
+                logger.log(Level.SEVERE, "postgresDatabase=" + postgresDatabase, t);
+              }
+            }
+          }));
+        }
+        for (Future<?> worker : workers) {
+          worker.get();
+        }
+      }
+    } catch (InterruptedException e) {
+      logger.log(Level.WARNING, null, e);
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, null, t);
+    }
+  }
+
+  /**
+   * Vacuums and reindexes the user tables of one database.
+   *
+   * <p>When bloat can be estimated, only tables {@linkplain #isBloated(long, double, long, int) estimated} to have
+   * at least {@link #MIN_BLOAT_PAGES} excess pages making up at least {@link #MIN_BLOAT_PERCENT} percent of their
+   * pages are vacuumed.  Tables without reliable statistics, and all tables on older servers, are vacuumed.  When it is time to reindex, tables just rebuilt by VACUUM FULL are not also
+   * reindexed.</p>
+   */
+  private static void maintainDatabase(
+      Server postgresServer,
+      Database postgresDatabase,
+      boolean postgresServerHasSchemas,
+      boolean postgresServerHasVacuumFull,
+      boolean postgresServerHasBloatEstimate,
+      boolean postgresServerVacuumFullReindexes,
+      boolean isReindexTime
+  ) throws ClassNotFoundException, IOException, SQLException {
+    List<String> tableNames = new ArrayList<>();
+    List<String> schemas = new ArrayList<>();
+    List<Boolean> needsVacuums = new ArrayList<>();
+    Connection conn;
+    if (postgresDatabase.getName().equals(Database.AOSERV)) {
+      // If the aoserv database, use the existing connection pools
+      conn = PostgresServerManager.getPool(postgresServer).getConnection();
+    } else {
+      // For other databases, establish a connection directly
+      Class.forName(postgresDatabase.getJdbcDriver());
+      conn = DriverManager.getConnection(
+          postgresDatabase.getJdbcUrl(true),
+          User.POSTGRES.toString(),
+          AoservDaemonConfiguration.getPostgresPassword(postgresServer.getName())
+      );
+      conn.setAutoCommit(true);
+    }
+    try {
+      try {
+        try (
+            PreparedStatement pstmt = conn.prepareStatement(
+                postgresServerHasBloatEstimate
+                    ? "SELECT t.tablename, t.schemaname, c.relpages, c.reltuples, w.row_width,"
+                    + " current_setting('block_size')::integer FROM pg_tables t"
+                    + " INNER JOIN pg_namespace n ON n.nspname = t.schemaname"
+                    + " INNER JOIN pg_class c ON c.relnamespace = n.oid AND c.relname = t.tablename"
+                    + " LEFT JOIN ("
+                    + "   SELECT schemaname, tablename, SUM(avg_width) AS row_width FROM pg_stats GROUP BY schemaname, tablename"
+                    + " ) w ON w.schemaname = t.schemaname AND w.tablename = t.tablename"
+                    + " WHERE t.tableowner != ?"
+                    : postgresServerHasSchemas
+                    ? "SELECT tablename, schemaname FROM pg_tables WHERE tableowner != ?"
+                    : "SELECT tablename FROM pg_tables WHERE tableowner != ?"
+            )
+            ) {
+          try {
+            pstmt.setString(1, User.POSTGRES.toString());
+            try (ResultSet results = pstmt.executeQuery()) {
+              while (results.next()) {
+                tableNames.add(results.getString(1));
+                if (postgresServerHasSchemas) {
+                  schemas.add(results.getString(2));
                 }
-                for (int c = 0; c < tableNames.size(); c++) {
-                  String tableName = tableNames.get(c);
-                  String schema = postgresServerHasSchemas ? schemas.get(c) : null;
-                  if (Database.Name.validate(tableName).isValid()) {
-                    if (
-                        !postgresServerHasSchemas
-                            || "public".equals(schema)
-                            || (
-                            schema != null
-                                && Database.Name.validate(schema).isValid()
-                          )
-                    ) {
-                      // VACUUM the table
-                      String currentSql = null;
-                      try (Statement stmt = conn.createStatement()) {
-                        stmt.executeUpdate(currentSql =
-                            postgresServerHasVacuumFull
-                                ? (
-                                postgresServerHasSchemas
-                                    ? ("VACUUM FULL ANALYZE \"" + schema + "\".\"" + tableName + '"')
-                                    : ("VACUUM FULL ANALYZE \"" + tableName + '"')
-                            ) : (
-                                postgresServerHasSchemas
-                                    ? ("VACUUM ANALYZE \"" + schema + "\".\"" + tableName + '"')
-                                    : ("VACUUM ANALYZE \"" + tableName + '"')
-                            )
-                        );
-                        if (isReindexTime) {
-                          // REINDEX the table
-                          stmt.executeUpdate(currentSql =
-                              postgresServerHasSchemas
-                                  ? ("REINDEX TABLE \"" + schema + "\".\"" + tableName + '"')
-                                  : ("REINDEX TABLE \"" + tableName + '"')
-                          );
-                        }
-                      } catch (Error | RuntimeException | SQLException e) {
-                        ErrorPrinter.addSql(e, currentSql);
-                        throw e;
-                      }
-                    } else {
-                      logger.log(Level.WARNING, "schema=" + schema, new SQLWarning(
-                          "Warning: not calling VACUUM or REINDEX because schema name does not pass the database name checks.  "
-                              + "This is to make sure specially-crafted schema names cannot be used to execute arbitrary SQL with administrative privileges."));
-                    }
-                  } else {
-                    logger.log(Level.WARNING, "tableName=" + tableName, new SQLWarning(
-                        "Warning: not calling VACUUM or REINDEX because table name does not pass the database name checks.  "
-                            + "This is to make sure specially-crafted table names cannot be used to execute arbitrary SQL with administrative privileges."));
+                boolean needsVacuum;
+                if (postgresServerHasBloatEstimate) {
+                  long relPages = results.getLong(3);
+                  double relTuples = results.getDouble(4);
+                  long rowWidth = results.getLong(5);
+                  if (results.wasNull()) {
+                    rowWidth = -1;
                   }
+                  needsVacuum = isBloated(relPages, relTuples, rowWidth, results.getInt(6));
+                } else {
+                  needsVacuum = true;
                 }
-              } catch (SQLException e) {
-                conn.abort(AoservDaemon.executorService);
+                needsVacuums.add(needsVacuum);
+              }
+            }
+          } catch (Error | RuntimeException | SQLException e) {
+            ErrorPrinter.addSql(e, pstmt);
+            throw e;
+          }
+        }
+        int maintainedCount = 0;
+        final long databaseStartTime = System.currentTimeMillis();
+        for (int c = 0; c < tableNames.size(); c++) {
+          String tableName = tableNames.get(c);
+          String schema = postgresServerHasSchemas ? schemas.get(c) : null;
+          boolean vacuum = needsVacuums.get(c);
+          boolean reindex = isReindexTime && !(vacuum && postgresServerHasVacuumFull && postgresServerVacuumFullReindexes);
+          if (!vacuum && !reindex) {
+            continue;
+          }
+          if (Database.Name.validate(tableName).isValid()) {
+            if (
+                !postgresServerHasSchemas
+                    || "public".equals(schema)
+                    || (
+                    schema != null
+                        && Database.Name.validate(schema).isValid()
+                  )
+            ) {
+              maintainedCount++;
+              String qualifiedName = postgresServerHasSchemas
+                  ? ("\"" + schema + "\".\"" + tableName + '"')
+                  : ('"' + tableName + '"');
+              String currentSql = null;
+              try (Statement stmt = conn.createStatement()) {
+                if (vacuum) {
+                  // VACUUM the table
+                  long startTime = System.currentTimeMillis();
+                  stmt.executeUpdate(currentSql =
+                      postgresServerHasVacuumFull
+                          ? ("VACUUM FULL ANALYZE " + qualifiedName)
+                          : ("VACUUM ANALYZE " + qualifiedName)
+                  );
+                  logMaintenance(postgresDatabase, currentSql, startTime);
+                }
+                if (reindex) {
+                  // REINDEX the table
+                  long startTime = System.currentTimeMillis();
+                  stmt.executeUpdate(currentSql = "REINDEX TABLE " + qualifiedName);
+                  logMaintenance(postgresDatabase, currentSql, startTime);
+                }
+              } catch (Error | RuntimeException | SQLException e) {
+                ErrorPrinter.addSql(e, currentSql);
                 throw e;
               }
-            } finally {
-              conn.close();
+            } else {
+              logger.log(Level.WARNING, "schema=" + schema, new SQLWarning(
+                  "Warning: not calling VACUUM or REINDEX because schema name does not pass the database name checks.  "
+                      + "This is to make sure specially-crafted schema names cannot be used to execute arbitrary SQL with administrative privileges."));
             }
+          } else {
+            logger.log(Level.WARNING, "tableName=" + tableName, new SQLWarning(
+                "Warning: not calling VACUUM or REINDEX because table name does not pass the database name checks.  "
+                    + "This is to make sure specially-crafted table names cannot be used to execute arbitrary SQL with administrative privileges."));
           }
         }
+        if (logger.isLoggable(Level.INFO)) {
+          logger.info(postgresDatabase + ": Maintained " + maintainedCount + " of " + tableNames.size()
+              + " tables in " + (System.currentTimeMillis() - databaseStartTime) + " ms");
+        }
+      } catch (SQLException e) {
+        conn.abort(AoservDaemon.executorService);
+        throw e;
       }
-    } catch (Throwable t) {
-      logger.log(Level.SEVERE, null, t);
+    } finally {
+      conn.close();
+    }
+  }
+
+  /**
+   * Records the duration of a maintenance statement.
+   */
+  private static void logMaintenance(Database postgresDatabase, String sql, long startTime) {
+    if (logger.isLoggable(Level.INFO)) {
+      logger.info(postgresDatabase + ": " + sql + " in " + (System.currentTimeMillis() - startTime) + " ms");
     }
   }
 }
@@ -43,8 +43,10 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Level;
@@ -202,14 +204,14 @@ public final class PostgresUserManager extends BuilderThread {
             boolean disableEnableDone = false;
             try (Connection conn = PostgresServerManager.getPool(ps).getConnection()) {
               try {
-                // Get the list of all existing users
-                Set<User.Name> existing = new HashSet<>();
+                // Get the list of all existing users, along with their login state when roles are supported
+                Map<User.Name, Boolean> existing = new HashMap<>();
                 String currentSql = null;
                 try (Statement stmt = conn.createStatement()) {
                   try (
                       ResultSet results = stmt.executeQuery(currentSql =
                           supportsRoles
-                              ? "SELECT rolname FROM pg_authid"
+                              ? "SELECT rolname, rolcanlogin FROM pg_authid"
                               : "SELECT usename FROM pg_user"
                       )
                       ) {
@@ -220,9 +222,10 @@ public final class PostgresUserManager extends BuilderThread {
                       }
                       try {
                         User.Name usename = User.Name.valueOf(username);
-                        if (!existing.add(usename)) {
+                        if (existing.containsKey(usename)) {
                           throw new SQLException("Duplicate username: " + usename);
                         }
+                        existing.put(usename, supportsRoles ? results.getBoolean(2) : null);
                       } catch (ValidationException e) {
                         throw new SQLException(e);
                       }
@@ -233,18 +236,25 @@ public final class PostgresUserManager extends BuilderThread {
                   throw e;
                 }
 
+                // Compute all changes before applying any
+                List<String> changes = new ArrayList<>();
+
                 // Find the users that do not exist and should be added
                 List<UserServer> needAdded = new ArrayList<>();
                 for (UserServer psu : users) {
                   User pu = psu.getPostgresUser();
                   User.Name username = pu.getKey();
-                  if (!existing.remove(username)) {
+                  if (!existing.containsKey(username)) {
                     needAdded.add(psu);
                   }
                 }
 
                 // Remove the extra users before adding to avoid usesysid or usename conflicts
-                for (User.Name username : existing) {
+                Set<User.Name> extra = new HashSet<>(existing.keySet());
+                for (UserServer psu : users) {
+                  extra.remove(psu.getPostgresUser().getKey());
+                }
+                for (User.Name username : extra) {
                   if (!systemRoles.contains(username)) {
                     if (User.isSpecial(username)) {
                       logger.log(
@@ -256,13 +266,7 @@ public final class PostgresUserManager extends BuilderThread {
                       if (logger.isLoggable(Level.FINE)) {
                         logger.fine("Dropping user: " + username);
                       }
-                      currentSql = null;
-                      try (Statement stmt = conn.createStatement()) {
-                        stmt.executeUpdate(currentSql = "DROP USER \"" + username + '"');
-                      } catch (Error | RuntimeException | SQLException e) {
-                        ErrorPrinter.addSql(e, currentSql);
-                        throw e;
-                      }
+                      changes.add("DROP USER \"" + username + '"');
                     }
                   }
                 }
@@ -310,15 +314,10 @@ public final class PostgresUserManager extends BuilderThread {
                         );
                       }
                       if (supportsRoles) {
-                        sql.append(" LOGIN");
-                      }
-                      currentSql = null;
-                      try (Statement stmt = conn.createStatement()) {
-                        stmt.executeUpdate(currentSql = sql.toString());
-                      } catch (Error | RuntimeException | SQLException e) {
-                        ErrorPrinter.addSql(e, currentSql);
-                        throw e;
+                        // Created directly in the correct login state
+                        sql.append(psu.isDisabled() ? " NOLOGIN" : " LOGIN");
                       }
+                      changes.add(sql.toString());
                     }
                   }
                 }
@@ -327,37 +326,16 @@ public final class PostgresUserManager extends BuilderThread {
                   for (UserServer psu : users) {
                     if (!psu.isSpecial()) {
                       User.Name username = psu.getPostgresUser().getKey();
-                      if (!systemRoles.contains(username)) {
-                        // Get the current login state
-                        boolean rolcanlogin;
-                        try (PreparedStatement pstmt = conn.prepareStatement("SELECT rolcanlogin FROM pg_authid WHERE rolname=?")) {
-                          try {
-                            pstmt.setString(1, username.toString());
-                            try (ResultSet results = pstmt.executeQuery()) {
-                              if (results.next()) {
-                                rolcanlogin = results.getBoolean(1);
-                              } else {
-                                throw new SQLException("Unable to find pg_authid entry for rolname='" + username + "'");
-                              }
-                            }
-                          } catch (Error | RuntimeException | SQLException e) {
-                            ErrorPrinter.addSql(e, pstmt);
-                            throw e;
-                          }
-                        }
+                      Boolean rolcanlogin = existing.get(username);
+                      // New users are created in the correct login state
+                      if (rolcanlogin != null && !systemRoles.contains(username)) {
                         if (!psu.isDisabled()) {
                           // Enable if needed
                           if (!rolcanlogin) {
                             if (logger.isLoggable(Level.FINE)) {
                               logger.fine("Adding login role: " + username);
                             }
-                            currentSql = null;
-                            try (Statement stmt = conn.createStatement()) {
-                              stmt.executeUpdate(currentSql = "ALTER ROLE \"" + username + "\" LOGIN");
-                            } catch (Error | RuntimeException | SQLException e) {
-                              ErrorPrinter.addSql(e, currentSql);
-                              throw e;
-                            }
+                            changes.add("ALTER ROLE \"" + username + "\" LOGIN");
                           }
                         } else {
                           // Disable if needed
@@ -365,13 +343,7 @@ public final class PostgresUserManager extends BuilderThread {
                             if (logger.isLoggable(Level.FINE)) {
                               logger.fine("Removing login role: " + username);
                             }
-                            currentSql = null;
-                            try (Statement stmt = conn.createStatement()) {
-                              stmt.executeUpdate(currentSql = "ALTER ROLE \"" + username + "\" NOLOGIN");
-                            } catch (Error | RuntimeException | SQLException e) {
-                              ErrorPrinter.addSql(e, currentSql);
-                              throw e;
-                            }
+                            changes.add("ALTER ROLE \"" + username + "\" NOLOGIN");
                           }
                         }
                       }
@@ -379,6 +351,33 @@ public final class PostgresUserManager extends BuilderThread {
                   }
                   disableEnableDone = true;
                 }
+
+                // Apply all changes in a single transaction and batch
+                if (!changes.isEmpty()) {
+                  boolean autoCommit = conn.getAutoCommit();
+                  conn.setAutoCommit(false);
+                  try {
+                    try (Statement stmt = conn.createStatement()) {
+                      for (String change : changes) {
+                        stmt.addBatch(change);
+                      }
+                      stmt.executeBatch();
+                    } catch (Error | RuntimeException | SQLException e) {
+                      ErrorPrinter.addSql(e, String.join(";\n", changes));
+                      throw e;
+                    }
+                    conn.commit();
+                  } catch (Throwable t) {
+                    try {
+                      conn.rollback();
+                    } catch (Throwable t2) {
+                      t.addSuppressed(t2);
+                    }
+                    throw t;
+                  } finally {
+                    conn.setAutoCommit(autoCommit);
+                  }
+                }
               } catch (SQLException e) {
                 conn.abort(AoservDaemon.executorService);
                 throw e;
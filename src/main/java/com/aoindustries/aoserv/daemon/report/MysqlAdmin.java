@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2001-2013, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,71 +23,129 @@
 
 package com.aoindustries.aoserv.daemon.report;
 
-import com.aoapps.lang.Strings;
 import com.aoapps.lang.util.ErrorPrinter;
-import com.aoindustries.aoserv.client.net.IpAddress;
+import com.aoindustries.aoserv.client.mysql.Server;
 import com.aoindustries.aoserv.daemon.AoservDaemon;
-import java.io.BufferedReader;
+import com.aoindustries.aoserv.daemon.mysql.MySQLServerManager;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Encapsulates the output of the <code>/usr/bin/mysqladmin</code> command.
+ * Encapsulates the output of <code>SHOW GLOBAL STATUS</code> for one MySQL server, queried through its
+ * connection pool.  The rates are computed from the previous sample of the same server.
  *
  * @author  AO Industries, Inc.
  */
 public final class MysqlAdmin extends DbReportData {
 
-  public final int questions;
-  public final int slowQueries;
-  public final int opens;
-  public final int flushTables;
-  public final int openTables;
+  /**
+   * The most recent sample of each server, by pkey, used to compute rates.
+   */
+  private static final ConcurrentMap<Integer, MysqlAdmin> lastSamples = new ConcurrentHashMap<>();
+
+  /**
+   * Samples every MySQL server on this server.
+   */
+  public static List<MysqlAdmin> getAll() throws IOException, SQLException {
+    List<Server> mysqlServers = AoservDaemon.getThisServer().getMysqlServers();
+    List<MysqlAdmin> samples = new ArrayList<>(mysqlServers.size());
+    for (Server mysqlServer : mysqlServers) {
+      samples.add(new MysqlAdmin(mysqlServer));
+    }
+    return samples;
+  }
+
+  public final Server.Name serverName;
+  public final long time;
+  /**
+   * All global status variables.
+   */
+  public final Map<String, String> status;
+  public final long uptime;
+  public final long questions;
+  public final long slowQueries;
+  public final long opens;
+  public final long flushTables;
+  public final long openTables;
+  /**
+   * The average since the server started, as reported by <code>mysqladmin status</code>.
+   */
   public final float queriesPerSecond;
+  /**
+   * The rates since the previous sample, or {@link Float#NaN} when there is no previous sample
+   * or the server has restarted.
+   */
+  public final float questionsPerSecond;
+  public final float slowQueriesPerSecond;
+  public final float opensPerSecond;
+
+  public MysqlAdmin(Server mysqlServer) throws IOException, SQLException {
+    serverName = mysqlServer.getName();
+    time = System.currentTimeMillis();
+    status = MySQLServerManager.getGlobalStatus(mysqlServer);
+    numUsers = (int) getLong("Threads_connected");
+    uptime = getLong("Uptime");
+    questions = getLong("Questions");
+    slowQueries = getLong("Slow_queries");
+    opens = getLong("Opened_tables");
+    flushTables = getLong("Flush_commands");
+    openTables = getLong("Open_tables");
+    queriesPerSecond = uptime == 0 ? 0 : ((float) questions / uptime);
 
-  public MysqlAdmin() throws IOException {
-    // TODO: Do once per MysqlServer instance
-    // TODO: Implement in NOC
-    String user = "TODO"; // AoservDaemonConfiguration.getMySqlUser();
-    String password = "TODO"; // AoservDaemonConfiguration.getMySqlPassword();
-    if (user != null && user.length() > 0 && password != null && password.length() > 0) {
-      String line = AoservDaemon.execCall(
-          stdout -> {
-            try (BufferedReader lineIn = new BufferedReader(new InputStreamReader(stdout))) {
-              return lineIn.readLine();
-            }
-          },
-          "/usr/bin/mysqladmin",
-          "-h",
-          IpAddress.LOOPBACK_IP,
-          "-u",
-          user,
-          "--password=" + password, // TODO: use --login-path
-          "status"
-      );
-      // Parse out the number of users
-      String[] words = Strings.split(line);
-      numUsers = Integer.parseInt(words[3]);
-      questions = Integer.parseInt(words[5]);
-      slowQueries = Integer.parseInt(words[8]);
-      opens = Integer.parseInt(words[10]);
-      flushTables = Integer.parseInt(words[13]);
-      openTables = Integer.parseInt(words[16]);
-      queriesPerSecond = Float.parseFloat(words[21]);
+    MysqlAdmin last = lastSamples.get(mysqlServer.getPkey());
+    long timeSpan = last == null ? 0 : (time - last.time);
+    if (
+        timeSpan > 0
+            && uptime >= last.uptime
+            && questions >= last.questions
+            && slowQueries >= last.slowQueries
+            && opens >= last.opens
+    ) {
+      questionsPerSecond = (questions - last.questions) * 1000f / timeSpan;
+      slowQueriesPerSecond = (slowQueries - last.slowQueries) * 1000f / timeSpan;
+      opensPerSecond = (opens - last.opens) * 1000f / timeSpan;
     } else {
-      numUsers = questions = slowQueries = opens = flushTables = openTables = 0;
-      queriesPerSecond = 0;
+      questionsPerSecond = slowQueriesPerSecond = opensPerSecond = Float.NaN;
+    }
+    // Published last, once every field has been assigned
+    lastSamples.put(mysqlServer.getPkey(), this);
+  }
+
+  /**
+   * Gets a numeric status variable.
+   *
+   * @return  the value or {@code 0} when not provided by this version of MySQL
+   */
+  private long getLong(String name) throws SQLException {
+    String value = status.get(name);
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new SQLException("Unable to parse " + name + " on " + serverName + ": " + value, e);
     }
   }
 
   @SuppressWarnings("UseOfSystemOutOrSystemErr")
   public static void main(String[] args) {
     try {
-      System.err.println(new MysqlAdmin());
+      for (MysqlAdmin mysqlAdmin : getAll()) {
+        System.err.println(mysqlAdmin);
+      }
       System.exit(0);
     } catch (IOException err) {
       ErrorPrinter.printStackTraces(err, System.err);
       System.exit(1);
+    } catch (SQLException err) {
+      ErrorPrinter.printStackTraces(err, System.err);
+      System.exit(2);
     }
   }
 
@@ -95,11 +153,15 @@ public final class MysqlAdmin extends DbReportData {
   public String toString() {
     return
         super.toString()
+            + "&serverName=" + serverName
             + "&questions=" + questions
-            + "&slowAueries=" + slowQueries
+            + "&slowQueries=" + slowQueries
             + "&opens=" + opens
             + "&flushTables=" + flushTables
             + "&openTables=" + openTables
-            + "&queriesPerSecond=" + queriesPerSecond;
+            + "&queriesPerSecond=" + queriesPerSecond
+            + "&questionsPerSecond=" + questionsPerSecond
+            + "&slowQueriesPerSecond=" + slowQueriesPerSecond
+            + "&opensPerSecond=" + opensPerSecond;
   }
 }
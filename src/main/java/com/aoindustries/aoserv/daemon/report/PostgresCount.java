@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2000-2013, 2017, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2000-2013, 2017, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,9 +25,6 @@ package com.aoindustries.aoserv.daemon.report;
 
 import com.aoapps.lang.util.ErrorPrinter;
 import com.aoindustries.aoserv.daemon.AoservDaemon;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.sql.SQLException;
 
@@ -38,48 +35,15 @@ import java.sql.SQLException;
  */
 public final class PostgresCount extends DbReportData {
 
-  private static final File proc = new File("/proc");
-
   public PostgresCount() throws IOException, SQLException {
     int total = 0;
     // Only the outer-most server counts the postgres processes
     if (AoservDaemon.getThisServer().getFailoverServer() == null) {
-      String[] list = proc.list();
-      int len = list.length;
-      for (int c = 0; c < len; c++) {
-        String filename = list[c];
-        char ch = filename.charAt(0);
-        if (ch >= '0' && ch <= '9') {
-          File file = new File(proc, filename);
-          if (file.isDirectory()) {
-            try {
-              try (FileInputStream in = new FileInputStream(new File(file, "cmdline"))) {
-                if (
-                    in.read() == '/'
-                        && in.read() == 'u'
-                        && in.read() == 's'
-                        && in.read() == 'r'
-                        && in.read() == '/'
-                        && in.read() == 'b'
-                        && in.read() == 'i'
-                        && in.read() == 'n'
-                        && in.read() == '/'
-                        && in.read() == 'p'
-                        && in.read() == 'o'
-                        && in.read() == 's'
-                        && in.read() == 't'
-                        && in.read() == 'g'
-                        && in.read() == 'r'
-                        && in.read() == 'e'
-                        && in.read() == 's'
-                ) {
-                  total++;
-                }
-              }
-            } catch (FileNotFoundException err) {
-              // Normal, if process has exited
-            }
-          }
+      ProcScan scan = ProcScan.getInstance();
+      for (int i = 0, size = scan.size(); i < size; i++) {
+        String command = scan.getCommand(i);
+        if (command != null && command.startsWith("/usr/bin/postgres")) {
+          total++;
         }
       }
     }
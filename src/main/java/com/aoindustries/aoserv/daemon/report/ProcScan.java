@@ -0,0 +1,301 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.report;
+
+import com.aoapps.lang.util.ErrorPrinter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A single pass over the <code>/proc/<var>PID</var></code> directories, reading only the fields needed by
+ * {@link ProcStates}, {@link PostgresCount}, and the Apache concurrency monitoring.
+ * Each process is stored in parallel primitive arrays, and the files are read through one reusable buffer.
+ *
+ * <p>Scans are shared: {@link #getInstance()} returns the most recent scan until it is older than
+ * {@link #MAX_AGE}, so consumers sampling at the same time walk <code>/proc</code> only once.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class ProcScan {
+
+  /**
+   * The maximum age of a scan returned by {@link #getInstance()}.
+   */
+  public static final long MAX_AGE = 5000;
+
+  private static final File proc = new File("/proc");
+
+  /**
+   * The buffer size, large enough for the fields used from any <code>status</code> file.
+   */
+  private static final int BUFFER_SIZE = 4096;
+
+  private static final byte[] STATE = "State:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] PPID = "PPid:".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] UID = "Uid:".getBytes(StandardCharsets.US_ASCII);
+
+  private static final Object instanceLock = new Object();
+  private static ProcScan instance;
+
+  /**
+   * Gets a scan no older than {@link #MAX_AGE}, performing a new scan when needed.
+   */
+  public static ProcScan getInstance() throws IOException {
+    synchronized (instanceLock) {
+      long currentTime = System.currentTimeMillis();
+      if (instance != null) {
+        long age = currentTime - instance.time;
+        if (age >= 0 && age < MAX_AGE) {
+          return instance;
+        }
+      }
+      instance = new ProcScan(proc);
+      return instance;
+    }
+  }
+
+  private final long time;
+  private final int size;
+  private final int[] pids;
+  private final char[] states;
+  private final int[] uids;
+  private final int[] ppids;
+  private final String[] commands;
+
+  /**
+   * Scans the process directories.
+   *
+   * @param  procDir  the directory containing the <code><var>PID</var></code> directories, normally <code>/proc</code>
+   */
+  ProcScan(File procDir) throws IOException {
+    time = System.currentTimeMillis();
+    String[] list = procDir.list();
+    if (list == null) {
+      throw new IOException("Not a directory? " + procDir);
+    }
+    int len = list.length;
+    int[] pidsTmp = new int[len];
+    char[] statesTmp = new char[len];
+    int[] uidsTmp = new int[len];
+    int[] ppidsTmp = new int[len];
+    String[] commandsTmp = new String[len];
+    byte[] buff = new byte[BUFFER_SIZE];
+    int count = 0;
+    for (String filename : list) {
+      int pid = parsePid(filename);
+      if (pid != -1) {
+        try {
+          // Read status
+          int statusLen = readFile(procDir.getPath() + '/' + filename + "/status", buff);
+          char state = 0;
+          int uid = -1;
+          int ppid = -1;
+          for (int lineStart = 0; lineStart < statusLen; ) {
+            int lineEnd = lineStart;
+            while (lineEnd < statusLen && buff[lineEnd] != '\n') {
+              lineEnd++;
+            }
+            if (startsWith(buff, lineStart, lineEnd, STATE)) {
+              int pos = skipWhitespace(buff, lineStart + STATE.length, lineEnd);
+              if (pos < lineEnd) {
+                state = (char) buff[pos];
+              }
+            } else if (startsWith(buff, lineStart, lineEnd, PPID)) {
+              ppid = parseInt(buff, skipWhitespace(buff, lineStart + PPID.length, lineEnd), lineEnd);
+            } else if (startsWith(buff, lineStart, lineEnd, UID)) {
+              // The first value is the real UID
+              uid = parseInt(buff, skipWhitespace(buff, lineStart + UID.length, lineEnd), lineEnd);
+            }
+            lineStart = lineEnd + 1;
+          }
+          // Read the first argument of cmdline, which is empty for kernel threads
+          int cmdlineLen = readFile(procDir.getPath() + '/' + filename + "/cmdline", buff);
+          int commandLen = 0;
+          while (commandLen < cmdlineLen && buff[commandLen] != 0) {
+            commandLen++;
+          }
+          pidsTmp[count] = pid;
+          statesTmp[count] = state;
+          uidsTmp[count] = uid;
+          ppidsTmp[count] = ppid;
+          commandsTmp[count] = commandLen == 0 ? null : new String(buff, 0, commandLen, StandardCharsets.ISO_8859_1);
+          count++;
+        } catch (FileNotFoundException err) {
+          // Normal if the process has terminated
+        }
+      }
+    }
+    size = count;
+    pids = count == len ? pidsTmp : Arrays.copyOf(pidsTmp, count);
+    states = count == len ? statesTmp : Arrays.copyOf(statesTmp, count);
+    uids = count == len ? uidsTmp : Arrays.copyOf(uidsTmp, count);
+    ppids = count == len ? ppidsTmp : Arrays.copyOf(ppidsTmp, count);
+    commands = count == len ? commandsTmp : Arrays.copyOf(commandsTmp, count);
+  }
+
+  /**
+   * Parses a process ID from a directory name.
+   *
+   * @return  the PID or {@code -1} when not all digits
+   */
+  private static int parsePid(String filename) {
+    int flen = filename.length();
+    if (flen == 0 || flen > 9) {
+      return -1;
+    }
+    int pid = 0;
+    for (int i = 0; i < flen; i++) {
+      char ch = filename.charAt(i);
+      if (ch < '0' || ch > '9') {
+        return -1;
+      }
+      pid = pid * 10 + (ch - '0');
+    }
+    return pid;
+  }
+
+  /**
+   * Reads up to the first {@link #BUFFER_SIZE} bytes of a file.
+   *
+   * @return  the number of bytes read
+   */
+  private static int readFile(String path, byte[] buff) throws IOException {
+    int len = 0;
+    try (InputStream in = new FileInputStream(path)) {
+      int ret;
+      while (len < buff.length && (ret = in.read(buff, len, buff.length - len)) != -1) {
+        len += ret;
+      }
+    }
+    return len;
+  }
+
+  private static boolean startsWith(byte[] buff, int start, int end, byte[] prefix) {
+    if (end - start < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buff[start + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int skipWhitespace(byte[] buff, int pos, int end) {
+    while (pos < end && (buff[pos] == ' ' || buff[pos] == '\t')) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * Parses a non-negative integer, stopping at the first non-digit.
+   *
+   * @return  the value or {@code -1} when no digits
+   */
+  private static int parseInt(byte[] buff, int pos, int end) {
+    int value = 0;
+    int start = pos;
+    while (pos < end && buff[pos] >= '0' && buff[pos] <= '9') {
+      value = value * 10 + (buff[pos++] - '0');
+    }
+    return pos == start ? -1 : value;
+  }
+
+  /**
+   * Gets the time the scan was started.
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Gets the number of processes found.
+   */
+  public int size() {
+    return size;
+  }
+
+  public int getPid(int index) {
+    return pids[index];
+  }
+
+  /**
+   * Gets the first character of the <code>State</code> field, such as <code>'S'</code> or <code>'R'</code>.
+   *
+   * @return  the state or {@code 0} when not found
+   */
+  public char getState(int index) {
+    return states[index];
+  }
+
+  /**
+   * Gets the real UID from the <code>Uid</code> field.
+   *
+   * @return  the UID or {@code -1} when not found
+   */
+  public int getUid(int index) {
+    return uids[index];
+  }
+
+  /**
+   * Gets the parent process ID from the <code>PPid</code> field.
+   *
+   * @return  the PPID or {@code -1} when not found
+   */
+  public int getPpid(int index) {
+    return ppids[index];
+  }
+
+  /**
+   * Gets the first argument of <code>cmdline</code>.
+   *
+   * @return  the command or <code>null</code> for kernel threads and zombies
+   */
+  public String getCommand(int index) {
+    return commands[index];
+  }
+
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public static void main(String[] args) {
+    try {
+      ProcScan scan = getInstance();
+      for (int i = 0; i < scan.size(); i++) {
+        System.out.println(
+            scan.getPid(i) + "\t" + scan.getState(i) + "\t" + scan.getUid(i) + "\t" + scan.getPpid(i) + "\t" + scan.getCommand(i)
+        );
+      }
+      System.exit(0);
+    } catch (IOException err) {
+      ErrorPrinter.printStackTraces(err, System.err);
+      System.exit(1);
+    }
+  }
+}
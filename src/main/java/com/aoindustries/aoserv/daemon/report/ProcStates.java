@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2000-2013, 2016, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2000-2013, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,29 +23,23 @@
 
 package com.aoindustries.aoserv.daemon.report;
 
-import com.aoapps.lang.Strings;
 import com.aoapps.lang.util.ErrorPrinter;
 import com.aoapps.lang.validation.ValidationException;
 import com.aoindustries.aoserv.client.linux.LinuxId;
 import com.aoindustries.aoserv.client.linux.Server;
 import com.aoindustries.aoserv.daemon.AoservDaemon;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.sql.SQLException;
 
 /**
  * Encapsulates the output of the <code>/proc/<var>PID</var>/status</code> files.
  *
+ * @see  ProcScan
+ *
  * @author  AO Industries, Inc.
  */
 public final class ProcStates {
 
-  private static final File proc = new File("/proc");
-
   public final int totalSleep;
   public final int userSleep;
   public final int totalRun;
@@ -77,79 +71,47 @@ public final class ProcStates {
     boolean isOuterServer = thisServer.getFailoverServer() == null;
     int uidMin = thisServer.getUidMin().getId();
 
-    // Parse for the values
-    String[] list = proc.list();
-    int len = list.length;
-    for (int c = 0; c < len; c++) {
-      String filename = list[c];
-      char ch = filename.charAt(0);
-      if (ch >= '0' && ch <= '9') {
-        File file = new File(proc, filename);
-        if (file.isDirectory()) {
-          try {
-            String state = null;
-            int uid = -1;
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(new File(file, "status"))))) {
-              String line;
-              while ((state == null || uid == -1) && (line = in.readLine()) != null) {
-                if (line.startsWith("State:")) {
-                  String[] words = Strings.split(line);
-                  state = words[1];
-                } else if (line.startsWith("Uid:")) {
-                  String[] words = Strings.split(line);
-                  uid = Integer.parseInt(words[1]);
-                }
-              }
-              if (isOuterServer) {
-                if (state == null) {
-                  totalUnknownTmp++;
-                } else {
-                  ch = state.charAt(0);
-                  if (ch == 'S') {
-                    totalSleepTmp++;
-                  } else if (ch == 'R') {
-                    totalRunTmp++;
-                  } else if (ch == 'Z') {
-                    totalZombieTmp++;
-                  } else if (ch == 'T') {
-                    totalTraceTmp++;
-                  } else if (ch == 'D') {
-                    totalUninterruptibleTmp++;
-                  } else {
-                    totalUnknownTmp++;
-                  }
-                }
-              }
-              if (
-                  uid >= uidMin
-                      && thisServer.getLinuxServerAccount(LinuxId.valueOf(uid)) != null
-              ) {
-                if (state == null) {
-                  userUnknownTmp++;
-                } else {
-                  ch = state.charAt(0);
-                  if (ch == 'S') {
-                    userSleepTmp++;
-                  } else if (ch == 'R') {
-                    userRunTmp++;
-                  } else if (ch == 'Z') {
-                    userZombieTmp++;
-                  } else if (ch == 'T') {
-                    userTraceTmp++;
-                  } else if (ch == 'D') {
-                    userUninterruptibleTmp++;
-                  } else {
-                    userUnknownTmp++;
-                  }
-                }
-              }
-            }
-          } catch (FileNotFoundException err) {
-            // Normal if the process has terminated
-          } catch (ValidationException e) {
-            throw new IOException(e);
+    // Count from the shared scan
+    ProcScan scan = ProcScan.getInstance();
+    for (int i = 0, size = scan.size(); i < size; i++) {
+      char state = scan.getState(i);
+      int uid = scan.getUid(i);
+      try {
+        if (isOuterServer) {
+          if (state == 'S') {
+            totalSleepTmp++;
+          } else if (state == 'R') {
+            totalRunTmp++;
+          } else if (state == 'Z') {
+            totalZombieTmp++;
+          } else if (state == 'T') {
+            totalTraceTmp++;
+          } else if (state == 'D') {
+            totalUninterruptibleTmp++;
+          } else {
+            totalUnknownTmp++;
+          }
+        }
+        if (
+            uid >= uidMin
+                && thisServer.getLinuxServerAccount(LinuxId.valueOf(uid)) != null
+        ) {
+          if (state == 'S') {
+            userSleepTmp++;
+          } else if (state == 'R') {
+            userRunTmp++;
+          } else if (state == 'Z') {
+            userZombieTmp++;
+          } else if (state == 'T') {
+            userTraceTmp++;
+          } else if (state == 'D') {
+            userUninterruptibleTmp++;
+          } else {
+            userUnknownTmp++;
           }
         }
+      } catch (ValidationException e) {
+        throw new IOException(e);
       }
     }
 
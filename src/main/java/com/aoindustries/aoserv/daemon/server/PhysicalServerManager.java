@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2012, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2012, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -24,7 +24,16 @@
 package com.aoindustries.aoserv.daemon.server;
 
 import com.aoapps.lang.ProcessResult;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The <code>ServerManager</code> controls stuff at a server level.
@@ -33,6 +42,8 @@ import java.io.IOException;
  */
 public final class PhysicalServerManager {
 
+  private static final Logger logger = Logger.getLogger(PhysicalServerManager.class.getName());
+
   /** Make no instances. */
   private PhysicalServerManager() {
     throw new AssertionError();
@@ -44,9 +55,72 @@ public final class PhysicalServerManager {
   };
 
   /**
-   * Gets the current UPS status.
+   * The address of the apcupsd network information server, which is the default
+   * <code>NISIP</code> and <code>NISPORT</code> in <code>/etc/apcupsd/apcupsd.conf</code>.
    */
-  public static String getUpsStatus() throws IOException {
+  private static final String NIS_HOST = "127.0.0.1";
+  private static final int NIS_PORT = 3551;
+
+  /**
+   * The connect and read timeout for the network information server.
+   */
+  private static final int NIS_TIMEOUT = 5000;
+
+  /**
+   * The number of milliseconds a UPS status is reused for subsequent requests.
+   */
+  private static final long UPS_STATUS_MAX_AGE = 1000;
+
+  private static final Object upsStatusLock = new Object();
+  private static String upsStatus;
+  private static long upsStatusTime;
+
+  /**
+   * Writes a command to the apcupsd network information server, prefixed by its length as a
+   * two-byte, big-endian integer.
+   */
+  static void writeNisCommand(DataOutputStream out, String command) throws IOException {
+    byte[] bytes = command.getBytes(StandardCharsets.US_ASCII);
+    out.writeShort(bytes.length);
+    out.write(bytes);
+    out.flush();
+  }
+
+  /**
+   * Reads a response from the apcupsd network information server.  Each record is prefixed by
+   * its length as a two-byte, big-endian integer, and the response ends with a zero-length record.
+   *
+   * @return  the records, concatenated
+   */
+  static String readNisResponse(DataInputStream in) throws IOException {
+    StringBuilder response = new StringBuilder();
+    int len;
+    while ((len = in.readUnsignedShort()) != 0) {
+      byte[] record = new byte[len];
+      in.readFully(record);
+      response.append(new String(record, StandardCharsets.ISO_8859_1));
+    }
+    return response.toString();
+  }
+
+  /**
+   * Gets the current UPS status from the apcupsd network information server, in the same
+   * format as <code>apcaccess status</code>.
+   */
+  private static String getNisStatus() throws IOException {
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(NIS_HOST, NIS_PORT), NIS_TIMEOUT);
+      socket.setSoTimeout(NIS_TIMEOUT);
+      writeNisCommand(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())), "status");
+      String status = readNisResponse(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+      if (status.isEmpty()) {
+        throw new IOException("Empty status from apcupsd network information server");
+      }
+      return status;
+    }
+  }
+
+  private static String getApcaccessStatus() throws IOException {
     ProcessResult result = ProcessResult.exec(apcaccessStatusCommand);
     String stderr = result.getStderr();
     if (result.getExitVal() == 0) {
@@ -59,4 +133,33 @@ public final class PhysicalServerManager {
       throw new IOException(stderr);
     }
   }
+
+  /**
+   * Gets the current UPS status, no older than {@link #UPS_STATUS_MAX_AGE}.
+   * The status is read from the apcupsd network information server, falling back to
+   * <code>apcaccess status</code> when the server is not available.
+   */
+  public static String getUpsStatus() throws IOException {
+    synchronized (upsStatusLock) {
+      long currentTime = System.currentTimeMillis();
+      if (upsStatus != null) {
+        long age = currentTime - upsStatusTime;
+        if (age >= 0 && age < UPS_STATUS_MAX_AGE) {
+          return upsStatus;
+        }
+      }
+      String status;
+      try {
+        status = getNisStatus();
+      } catch (IOException e) {
+        if (logger.isLoggable(Level.FINE)) {
+          logger.log(Level.FINE, "apcupsd network information server not available, using apcaccess", e);
+        }
+        status = getApcaccessStatus();
+      }
+      upsStatus = status;
+      upsStatusTime = currentTime;
+      return status;
+    }
+  }
 }
@@ -0,0 +1,388 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Extracts public keys from PEM-encoded keys, certificate signing requests, and certificates without forking
+ * <code>openssl</code>.  The results are formatted exactly as printed by <code>openssl pkey -pubout</code>,
+ * <code>openssl req -pubkey -noout</code>, and <code>openssl x509 -pubkey -noout</code>, so hashes of them
+ * match those previously computed from the command output.
+ *
+ * <p>Only unencrypted RSA private keys are supported.  Any other input returns <code>null</code>,
+ * in which case the caller falls back to <code>openssl</code>.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class PemPublicKeys {
+
+  /** Make no instances. */
+  private PemPublicKeys() {
+    throw new AssertionError();
+  }
+
+  private static final byte DER_SEQUENCE = 0x30;
+  private static final byte DER_INTEGER = 0x02;
+  private static final byte DER_CONTEXT_0 = (byte) 0xA0;
+
+  /**
+   * One block of a PEM file.
+   */
+  private static final class Block {
+    private final String label;
+    /**
+     * Any block with encapsulated headers, which is not decoded.
+     */
+    private final boolean encrypted;
+    /**
+     * The decoded content or <code>null</code> when {@link #encrypted}.
+     */
+    private final byte[] der;
+
+    private Block(String label, boolean encrypted, byte[] der) {
+      this.label = label;
+      this.encrypted = encrypted;
+      this.der = der;
+    }
+  }
+
+  /**
+   * Parses all blocks of a PEM file, ignoring any text between blocks.
+   */
+  private static List<Block> parseBlocks(byte[] pem) throws IOException {
+    String text = new String(pem, StandardCharsets.US_ASCII);
+    List<Block> blocks = new ArrayList<>();
+    int pos = 0;
+    while (true) {
+      int begin = text.indexOf("-----BEGIN ", pos);
+      if (begin == -1) {
+        return blocks;
+      }
+      int labelStart = begin + "-----BEGIN ".length();
+      int labelEnd = text.indexOf("-----", labelStart);
+      if (labelEnd == -1) {
+        throw new IOException("Unterminated PEM header");
+      }
+      String label = text.substring(labelStart, labelEnd);
+      String endMarker = "-----END " + label + "-----";
+      int contentStart = labelEnd + "-----".length();
+      int end = text.indexOf(endMarker, contentStart);
+      if (end == -1) {
+        throw new IOException("PEM block not terminated: " + label);
+      }
+      String content = text.substring(contentStart, end);
+      // RFC 1421 encapsulated headers, such as "Proc-Type: 4,ENCRYPTED"
+      boolean encrypted = content.indexOf(':') != -1;
+      byte[] der;
+      if (encrypted) {
+        der = null;
+      } else {
+        try {
+          der = Base64.getMimeDecoder().decode(content);
+        } catch (IllegalArgumentException e) {
+          throw new IOException("Invalid base64 in PEM block: " + label, e);
+        }
+      }
+      blocks.add(new Block(label, encrypted, der));
+      pos = end + endMarker.length();
+    }
+  }
+
+  /**
+   * Gets the number of bytes in the tag and length of the DER element at the given offset.
+   */
+  private static int getHeaderLength(byte[] der, int offset) throws IOException {
+    if (offset + 2 > der.length) {
+      throw new IOException("Truncated DER");
+    }
+    int lenByte = der[offset + 1] & 0xFF;
+    if (lenByte < 0x80) {
+      return 2;
+    }
+    int numBytes = lenByte & 0x7F;
+    if (numBytes == 0 || numBytes > 4) {
+      throw new IOException("Unsupported DER length: " + numBytes + " bytes");
+    }
+    return 2 + numBytes;
+  }
+
+  /**
+   * Gets the number of bytes in the content of the DER element at the given offset.
+   */
+  private static int getContentLength(byte[] der, int offset) throws IOException {
+    int headerLength = getHeaderLength(der, offset);
+    int contentLength;
+    if (headerLength == 2) {
+      contentLength = der[offset + 1] & 0xFF;
+    } else {
+      if (offset + headerLength > der.length) {
+        throw new IOException("Truncated DER");
+      }
+      contentLength = 0;
+      for (int i = offset + 2; i < offset + headerLength; i++) {
+        contentLength = (contentLength << 8) | (der[i] & 0xFF);
+      }
+      if (contentLength < 0) {
+        throw new IOException("DER length too large");
+      }
+    }
+    if ((long) offset + headerLength + contentLength > der.length) {
+      throw new IOException("Truncated DER");
+    }
+    return contentLength;
+  }
+
+  /**
+   * Gets the offset just past the DER element at the given offset.
+   */
+  private static int skip(byte[] der, int offset) throws IOException {
+    return offset + getHeaderLength(der, offset) + getContentLength(der, offset);
+  }
+
+  /**
+   * Gets the offset of the first element within the DER element at the given offset.
+   */
+  private static int enter(byte[] der, int offset, byte expectedTag) throws IOException {
+    if (offset >= der.length || der[offset] != expectedTag) {
+      throw new IOException("Unexpected DER tag at " + offset);
+    }
+    return offset + getHeaderLength(der, offset);
+  }
+
+  /**
+   * Formats a SubjectPublicKeyInfo as done by <code>openssl</code>.
+   */
+  private static String toPem(byte[] subjectPublicKeyInfo) {
+    return "-----BEGIN PUBLIC KEY-----\n"
+        + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(subjectPublicKeyInfo)
+        + "\n-----END PUBLIC KEY-----\n";
+  }
+
+  /**
+   * Gets the SubjectPublicKeyInfo of the first RSA private key.
+   *
+   * @return  the public key or <code>null</code> when no supported private key is found
+   */
+  private static byte[] getPrivateKeyPublicKeyInfo(List<Block> blocks) throws IOException {
+    for (Block block : blocks) {
+      switch (block.label) {
+        case "RSA PRIVATE KEY":
+          {
+            if (block.encrypted) {
+              return null;
+            }
+            // PKCS #1: RSAPrivateKey ::= SEQUENCE { version, modulus, publicExponent, ... }
+            byte[] der = block.der;
+            int pos = enter(der, 0, DER_SEQUENCE);
+            pos = skip(der, pos);
+            int modulusPos = pos;
+            pos = skip(der, pos);
+            int exponentPos = pos;
+            if (der[modulusPos] != DER_INTEGER || der[exponentPos] != DER_INTEGER) {
+              throw new IOException("Unexpected DER tag in RSA private key");
+            }
+            BigInteger modulus = new BigInteger(Arrays.copyOfRange(
+                der, modulusPos + getHeaderLength(der, modulusPos), exponentPos
+            ));
+            BigInteger publicExponent = new BigInteger(Arrays.copyOfRange(
+                der, exponentPos + getHeaderLength(der, exponentPos), skip(der, exponentPos)
+            ));
+            return getRsaPublicKeyInfo(modulus, publicExponent);
+          }
+        case "PRIVATE KEY":
+          {
+            if (block.encrypted) {
+              return null;
+            }
+            // PKCS #8
+            PrivateKey privateKey;
+            try {
+              privateKey = KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(block.der));
+            } catch (GeneralSecurityException e) {
+              // Not RSA
+              return null;
+            }
+            if (!(privateKey instanceof RSAPrivateCrtKey)) {
+              return null;
+            }
+            RSAPrivateCrtKey rsaKey = (RSAPrivateCrtKey) privateKey;
+            return getRsaPublicKeyInfo(rsaKey.getModulus(), rsaKey.getPublicExponent());
+          }
+        case "ENCRYPTED PRIVATE KEY":
+        case "EC PRIVATE KEY":
+        case "DSA PRIVATE KEY":
+          return null;
+        default:
+          // Skip other blocks, such as certificates in a combined file
+      }
+    }
+    return null;
+  }
+
+  private static byte[] getRsaPublicKeyInfo(BigInteger modulus, BigInteger publicExponent) throws IOException {
+    try {
+      return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, publicExponent)).getEncoded();
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Unable to create RSA public key: " + e.toString(), e);
+    }
+  }
+
+  /**
+   * Gets the public key of the first private key in a PEM file, as printed by
+   * <code>openssl pkey -outform PEM -pubout</code>.
+   *
+   * @return  the public key or <code>null</code> when unable to extract in-process
+   */
+  static String getPrivateKeyPublicKey(byte[] pem) throws IOException {
+    byte[] publicKeyInfo = getPrivateKeyPublicKeyInfo(parseBlocks(pem));
+    return (publicKeyInfo == null) ? null : toPem(publicKeyInfo);
+  }
+
+  /**
+   * Gets the public key of the first certificate signing request in a PEM file, as printed by
+   * <code>openssl req -outform PEM -pubkey -noout</code>.
+   *
+   * @return  the public key or <code>null</code> when unable to extract in-process
+   */
+  static String getCsrPublicKey(byte[] pem) throws IOException {
+    for (Block block : parseBlocks(pem)) {
+      if ("CERTIFICATE REQUEST".equals(block.label) || "NEW CERTIFICATE REQUEST".equals(block.label)) {
+        if (block.encrypted) {
+          return null;
+        }
+        // CertificationRequest ::= SEQUENCE { certificationRequestInfo SEQUENCE { version, subject, subjectPKInfo, ... }, ... }
+        byte[] der = block.der;
+        int pos = enter(der, 0, DER_SEQUENCE);
+        pos = enter(der, pos, DER_SEQUENCE);
+        pos = skip(der, pos);
+        pos = skip(der, pos);
+        if (der[pos] != DER_SEQUENCE) {
+          throw new IOException("Unexpected DER tag in certificate signing request");
+        }
+        return toPem(Arrays.copyOfRange(der, pos, skip(der, pos)));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the SubjectPublicKeyInfo exactly as encoded in a certificate.
+   */
+  private static byte[] getPublicKeyInfo(X509Certificate certificate) throws IOException {
+    byte[] tbs;
+    try {
+      tbs = certificate.getTBSCertificate();
+    } catch (CertificateEncodingException e) {
+      throw new IOException("Unable to encode certificate: " + e.toString(), e);
+    }
+    // TBSCertificate ::= SEQUENCE { [0] version OPTIONAL, serialNumber, signature, issuer, validity, subject, subjectPublicKeyInfo, ... }
+    int pos = enter(tbs, 0, DER_SEQUENCE);
+    if (tbs[pos] == DER_CONTEXT_0) {
+      pos = skip(tbs, pos);
+    }
+    for (int i = 0; i < 5; i++) {
+      pos = skip(tbs, pos);
+    }
+    if (tbs[pos] != DER_SEQUENCE) {
+      throw new IOException("Unexpected DER tag in certificate");
+    }
+    return Arrays.copyOfRange(tbs, pos, skip(tbs, pos));
+  }
+
+  /**
+   * Parses all of the certificates in a PEM file.
+   *
+   * @return  the certificates or <code>null</code> when any certificate block has encapsulated headers
+   */
+  private static List<X509Certificate> getCertificates(CertificateFactory factory, List<Block> blocks) throws IOException {
+    List<X509Certificate> certificates = new ArrayList<>();
+    for (Block block : blocks) {
+      if ("CERTIFICATE".equals(block.label) || "X509 CERTIFICATE".equals(block.label)) {
+        if (block.encrypted) {
+          return null;
+        }
+        try (InputStream in = new ByteArrayInputStream(block.der)) {
+          certificates.add((X509Certificate) factory.generateCertificate(in));
+        } catch (CertificateException e) {
+          throw new IOException("Unable to parse certificate: " + e.toString(), e);
+        }
+      }
+    }
+    return certificates;
+  }
+
+  /**
+   * Gets the public key of the first certificate in a PEM file, as printed by
+   * <code>openssl x509 -outform PEM -pubkey -noout</code>.
+   *
+   * @return  the public key or <code>null</code> when unable to extract in-process
+   */
+  static String getCertificatePublicKey(CertificateFactory factory, byte[] pem) throws IOException {
+    List<X509Certificate> certificates = getCertificates(factory, parseBlocks(pem));
+    return (certificates == null || certificates.isEmpty()) ? null : toPem(getPublicKeyInfo(certificates.get(0)));
+  }
+
+  /**
+   * Finds the certificate in a file containing both the private key and certificates, selecting
+   * the certificate for the private key as done by <code>openssl pkcs12 -export</code>.
+   *
+   * @return  the certificate or <code>null</code> when unable to select in-process
+   */
+  static X509Certificate getCombinedCertificate(CertificateFactory factory, byte[] pem) throws IOException {
+    List<Block> blocks = parseBlocks(pem);
+    byte[] keyPublicKeyInfo = getPrivateKeyPublicKeyInfo(blocks);
+    if (keyPublicKeyInfo == null) {
+      return null;
+    }
+    List<X509Certificate> certificates = getCertificates(factory, blocks);
+    if (certificates == null) {
+      return null;
+    }
+    for (X509Certificate certificate : certificates) {
+      if (Arrays.equals(keyPublicKeyInfo, getPublicKeyInfo(certificate))) {
+        return certificate;
+      }
+    }
+    return null;
+  }
+}
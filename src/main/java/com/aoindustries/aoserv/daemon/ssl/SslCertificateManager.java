@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2020, 2021, 2022, 2024, 2025  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2020, 2021, 2022, 2024, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -58,6 +58,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.MessageDigest;
@@ -79,6 +81,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import javax.naming.InvalidNameException;
 import javax.naming.ldap.LdapName;
@@ -128,38 +132,114 @@ public final class SslCertificateManager {
   private static final long CERTBOT_LOCKED_SLEEP = 6000;
   private static final int CERTBOT_LOCKED_ATTEMPTS = 10;
 
-  private static final Map<Tuple2<PosixFile, String>, Tuple2<Long, String>> getHashedCache = new HashMap<>();
+  /**
+   * The number of locks used to serialize the computation of cached values for the same file,
+   * while allowing different files to be computed concurrently.
+   */
+  private static final int LOCK_STRIPES = 16;
+
+  private static Object[] newLockStripes() {
+    Object[] locks = new Object[LOCK_STRIPES];
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+    return locks;
+  }
+
+  private static Object getLockStripe(Object[] locks, Object key) {
+    return locks[Math.floorMod(key.hashCode(), locks.length)];
+  }
+
+  /**
+   * Reads the full contents of a file, which is expected to be small.
+   */
+  private static byte[] readFile(PosixFile file) throws IOException {
+    return Files.readAllBytes(file.getFile().toPath());
+  }
+
+  private static class HashedCacheEntry {
+    private final long modifiedTime;
+    private final long size;
+    private final String hashed;
+
+    private HashedCacheEntry(long modifiedTime, long size, String hashed) {
+      this.modifiedTime = modifiedTime;
+      this.size = size;
+      this.hashed = hashed;
+    }
+  }
+
+  private static final ConcurrentMap<Tuple2<PosixFile, String>, HashedCacheEntry> getHashedCache = new ConcurrentHashMap<>();
+  private static final Object[] getHashedLocks = newLockStripes();
+
+  /**
+   * Gets the public key for hashing, computed in-process.
+   */
+  @FunctionalInterface
+  private static interface PublicKeyFunction {
+    /**
+     * @return  the public key, formatted as the command would, or <code>null</code> when unable to compute in-process
+     */
+    String getPublicKey(byte[] pem) throws IOException;
+  }
 
   /**
-   * Gets the SHA-256 hashed output from a command, caching results when the file has not changed modified times.
+   * Gets the SHA-256 hashed public key from a file, caching results while the file has not changed modified time or size.
+   * The public key is extracted in-process when possible, otherwise it is the output of the command.
    *
-   * <p><b>Implementation Note:</b><br />
-   * This synchronizes on {@link SslCertificateManager#getHashedCache} which will serialize all commands.  This is OK as results will be cached normally.</p>
+   * @param  publicKeyFunction  the in-process equivalent of the command or <code>null</code> to always run the command
    */
-  private static String getCommandHash(PosixFile file, String type, long modifiedTime, boolean allowCached, String... command) throws IOException {
-    try {
-      Tuple2<PosixFile, String> cacheKey = new Tuple2<>(file, type);
-      synchronized (getHashedCache) {
-        Tuple2<Long, String> cached = allowCached ? getHashedCache.get(cacheKey) : null;
-        if (cached != null && cached.getElement1() == modifiedTime) {
-          return cached.getElement2();
+  private static String getCommandHash(
+      PosixFile file,
+      String type,
+      Stat stat,
+      boolean allowCached,
+      PublicKeyFunction publicKeyFunction,
+      String... command
+  ) throws IOException {
+    long modifiedTime = stat.getModifyTime();
+    long size = stat.getSize();
+    Tuple2<PosixFile, String> cacheKey = new Tuple2<>(file, type);
+    if (allowCached) {
+      HashedCacheEntry cached = getHashedCache.get(cacheKey);
+      if (cached != null && cached.modifiedTime == modifiedTime && cached.size == size) {
+        return cached.hashed;
+      }
+    }
+    synchronized (getLockStripe(getHashedLocks, cacheKey)) {
+      if (allowCached) {
+        // Check again in case computed while waiting for lock
+        HashedCacheEntry cached = getHashedCache.get(cacheKey);
+        if (cached != null && cached.modifiedTime == modifiedTime && cached.size == size) {
+          return cached.hashed;
+        }
+      }
+      byte[] output = null;
+      if (publicKeyFunction != null) {
+        String publicKey = publicKeyFunction.getPublicKey(readFile(file));
+        if (publicKey != null) {
+          output = publicKey.getBytes(StandardCharsets.US_ASCII);
         }
+      }
+      if (output == null) {
+        output = AoservDaemon.execAndCaptureBytes(command);
+      }
+      String hashed;
+      try {
         @SuppressWarnings("deprecation")
-        String hashed = Strings.convertToHex(
-            MessageDigest.getInstance(ALGORITHM).digest(
-                AoservDaemon.execAndCaptureBytes(command)
-            )
-        );
-        getHashedCache.put(cacheKey, new Tuple2<>(modifiedTime, hashed));
-        return hashed;
+        String hex = Strings.convertToHex(MessageDigest.getInstance(ALGORITHM).digest(output));
+        hashed = hex;
+      } catch (NoSuchAlgorithmException e) {
+        throw new AssertionError(ALGORITHM + " is expected to exist", e);
       }
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(ALGORITHM + " is expected to exist", e);
+      getHashedCache.put(cacheKey, new HashedCacheEntry(modifiedTime, size, hashed));
+      return hashed;
     }
   }
 
   private static class X509Status {
     private final long certModifyTime;
+    private final long certSize;
 
     private final Date notBefore;
     private final Date notAfter;
@@ -168,12 +248,14 @@ public final class SslCertificateManager {
 
     private X509Status(
         long certModifyTime,
+        long certSize,
         Date notBefore,
         Date notAfter,
         String commonName,
         Set<String> altNames
     ) {
       this.certModifyTime = certModifyTime;
+      this.certSize = certSize;
       this.notBefore = notBefore;
       this.notAfter = notAfter;
       this.commonName = commonName;
@@ -202,78 +284,101 @@ public final class SslCertificateManager {
 
   private static final String FACTORY_TYPE = "X.509";
 
-  private static final Map<PosixFile, X509Status> x509Cache = new HashMap<>();
+  private static final ConcurrentMap<PosixFile, X509Status> x509Cache = new ConcurrentHashMap<>();
+  private static final Object[] x509Locks = newLockStripes();
+
+  private static CertificateFactory getCertificateFactory() throws IOException {
+    try {
+      return CertificateFactory.getInstance(FACTORY_TYPE);
+    } catch (CertificateException e) {
+      throw new IOException(FACTORY_TYPE + ": Unable to load certificate factory: " + e.toString(), e);
+    }
+  }
 
   /**
    * Gets the x509 status.
    */
   private static X509Status getX509Status(PosixFile certCanonical, PosixFile keyCanonical, boolean allowCached) throws IOException {
-    synchronized (x509Cache) {
-      long certModifyTime = certCanonical.getStat().getModifyTime();
-
-      X509Status cached = allowCached ? x509Cache.get(certCanonical) : null;
+    Stat certStat = certCanonical.getStat();
+    long certModifyTime = certStat.getModifyTime();
+    long certSize = certStat.getSize();
+    if (allowCached) {
+      X509Status cached = x509Cache.get(certCanonical);
       if (
           cached != null
               && certModifyTime == cached.certModifyTime
+              && certSize == cached.certSize
       ) {
         return cached;
       }
-
-      CertificateFactory factory;
-      try {
-        factory = CertificateFactory.getInstance(FACTORY_TYPE);
-      } catch (CertificateException e) {
-        throw new IOException(FACTORY_TYPE + ": Unable to load certificate factory: " + e.toString(), e);
+    }
+    synchronized (getLockStripe(x509Locks, certCanonical)) {
+      if (allowCached) {
+        // Check again in case loaded while waiting for lock
+        X509Status cached = x509Cache.get(certCanonical);
+        if (
+            cached != null
+                && certModifyTime == cached.certModifyTime
+                && certSize == cached.certSize
+        ) {
+          return cached;
+        }
       }
+
+      CertificateFactory factory = getCertificateFactory();
       X509Certificate certificate;
       if (certCanonical.equals(keyCanonical)) {
-        // Use openssl to convert .pem file to pkcs12 on-the-fly
-
-        // Generate a one-time random password (64-bit random, one-shot)
-        String passphrase = new SmallIdentifier().toString();
-        // TODO: Try without password
-        // Convert to PKCS12
-        byte[] pkcs12 = AoservDaemon.execAndCaptureBytes(
-            "openssl", "pkcs12", "-export", "-in", certCanonical.getPath(), "-passout", "pass:" + passphrase
-        );
-
-        // Key and cert together, load through Keystore
-        // See https://stackoverflow.com/questions/21794117/java-security-cert-certificateparsingexception-signed-fields-invalid
-        final String keystoreType = "PKCS12";
-        KeyStore ks;
-        try {
-          ks = KeyStore.getInstance(keystoreType);
-        } catch (KeyStoreException e) {
-          throw new IOException(FACTORY_TYPE + ": Unable to get keystore instance of type \"" + keystoreType + "\": " + e.toString(), e);
-        }
-        try (InputStream in = new ByteArrayInputStream(pkcs12)) {
-          ks.load(in, passphrase.toCharArray()); // TODO: Try without passphrase
-        } catch (NoSuchAlgorithmException | CertificateException e) {
-          throw new IOException(FACTORY_TYPE + ": Unable to load keystore from \"" + certCanonical + "\": " + e.toString(), e);
-        }
-        Enumeration<String> aliases;
-        try {
-          aliases = ks.aliases();
-        } catch (KeyStoreException e) {
-          throw new IOException(FACTORY_TYPE + ": Unable to get keystore aliases from \"" + certCanonical + "\": " + e.toString(), e);
-        }
-        Set<String> aliasSet = new LinkedHashSet<>();
-        while (aliases.hasMoreElements()) {
-          String alias = aliases.nextElement();
-          if (!aliasSet.add(alias)) {
-            throw new IOException(FACTORY_TYPE + ": Duplicate alias from pkcs12 conversion from \"" + certCanonical + "\": " + alias);
+        // Select the certificate matching the key in-process when possible
+        certificate = PemPublicKeys.getCombinedCertificate(factory, readFile(certCanonical));
+        if (certificate == null) {
+          // Use openssl to convert .pem file to pkcs12 on-the-fly
+
+          // Generate a one-time random password (64-bit random, one-shot)
+          String passphrase = new SmallIdentifier().toString();
+          // TODO: Try without password
+          // Convert to PKCS12
+          byte[] pkcs12 = AoservDaemon.execAndCaptureBytes(
+              "openssl", "pkcs12", "-export", "-in", certCanonical.getPath(), "-passout", "pass:" + passphrase
+          );
+
+          // Key and cert together, load through Keystore
+          // See https://stackoverflow.com/questions/21794117/java-security-cert-certificateparsingexception-signed-fields-invalid
+          final String keystoreType = "PKCS12";
+          KeyStore ks;
+          try {
+            ks = KeyStore.getInstance(keystoreType);
+          } catch (KeyStoreException e) {
+            throw new IOException(FACTORY_TYPE + ": Unable to get keystore instance of type \"" + keystoreType + "\": " + e.toString(), e);
+          }
+          try (InputStream in = new ByteArrayInputStream(pkcs12)) {
+            ks.load(in, passphrase.toCharArray()); // TODO: Try without passphrase
+          } catch (NoSuchAlgorithmException | CertificateException e) {
+            throw new IOException(FACTORY_TYPE + ": Unable to load keystore from \"" + certCanonical + "\": " + e.toString(), e);
+          }
+          Enumeration<String> aliases;
+          try {
+            aliases = ks.aliases();
+          } catch (KeyStoreException e) {
+            throw new IOException(FACTORY_TYPE + ": Unable to get keystore aliases from \"" + certCanonical + "\": " + e.toString(), e);
+          }
+          Set<String> aliasSet = new LinkedHashSet<>();
+          while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+            if (!aliasSet.add(alias)) {
+              throw new IOException(FACTORY_TYPE + ": Duplicate alias from pkcs12 conversion from \"" + certCanonical + "\": " + alias);
+            }
+          }
+          if (aliasSet.isEmpty()) {
+            throw new IOException(FACTORY_TYPE + ": No aliases from pkcs12 conversion from \"" + certCanonical + "\"");
+          } else if (aliasSet.size() > 1) {
+            throw new IOException(FACTORY_TYPE + ": More than one alias from pkcs12 conversion from \"" + certCanonical + "\": " + StringUtils.join(aliasSet, ", "));
+          }
+          String alias = aliasSet.iterator().next();
+          try {
+            certificate = (X509Certificate) ks.getCertificate(alias);
+          } catch (KeyStoreException e) {
+            throw new IOException(FACTORY_TYPE + ": Unable to get certificate from pkcs12 conversion from \"" + certCanonical + "\": " + e.toString(), e);
           }
-        }
-        if (aliasSet.isEmpty()) {
-          throw new IOException(FACTORY_TYPE + ": No aliases from pkcs12 conversion from \"" + certCanonical + "\"");
-        } else if (aliasSet.size() > 1) {
-          throw new IOException(FACTORY_TYPE + ": More than one alias from pkcs12 conversion from \"" + certCanonical + "\": " + StringUtils.join(aliasSet, ", "));
-        }
-        String alias = aliasSet.iterator().next();
-        try {
-          certificate = (X509Certificate) ks.getCertificate(alias);
-        } catch (KeyStoreException e) {
-          throw new IOException(FACTORY_TYPE + ": Unable to get certificate from pkcs12 conversion from \"" + certCanonical + "\": " + e.toString(), e);
         }
       } else {
         // Cert alone, load directly
@@ -330,6 +435,7 @@ public final class SslCertificateManager {
       }
       X509Status result = new X509Status(
           certModifyTime,
+          certSize,
           certificate.getNotBefore(),
           certificate.getNotAfter(),
           commonName,
@@ -680,10 +786,8 @@ public final class SslCertificateManager {
               chainCanonicalExists = chainExists;
             }
 
-            // Get the last modified of each file, or 0 for a file that doesn't exist
-            long keyModifyTime   = keyCanonicalExists   ? keyCanonicalStat.getModifyTime() : 0;
-            long csrModifyTime   = csrCanonicalExists   ? csrCanonicalStat.getModifyTime() : 0;
-            long certModifyTime  = certCanonicalExists  ? certCanonicalStat.getModifyTime() : 0;
+            // Get the last modified of the chain, or 0 when it doesn't exist
+            // Key, CSR, and cert hashes are cached by their canonical Stat
             long chainModifyTime = chainCanonicalExists ? chainCanonicalStat.getModifyTime() : 0; // TODO: How to verify chain?
 
             // New: Compare by public key: https://www.sslshopper.com/certificate-key-matcher.html
@@ -691,8 +795,9 @@ public final class SslCertificateManager {
             String keyHash  = keyCanonicalExists  ? getCommandHash(
                 keyCanonical,
                 isNewOpenssl ? "pkey" : "rsa",
-                keyModifyTime,
+                keyCanonicalStat,
                 allowCached,
+                isNewOpenssl ? PemPublicKeys::getPrivateKeyPublicKey : null,
                 isNewOpenssl
                     ? new String[]{"openssl", "pkey", "-outform", "PEM", "-in", keyCanonical.getPath(), "-pubout"}
                     : new String[]{"openssl", "rsa", "-in", keyCanonical.getPath(), "-noout", "-modulus"}
@@ -700,8 +805,9 @@ public final class SslCertificateManager {
             String csrHash  = csrCanonicalExists  ? getCommandHash(
                 csrCanonical,
                 "req",
-                csrModifyTime,
+                csrCanonicalStat,
                 allowCached,
+                isNewOpenssl ? PemPublicKeys::getCsrPublicKey : null,
                 isNewOpenssl
                     ? new String[]{"openssl", "req", "-outform", "PEM", "-in", csrCanonical.getPath(), "-pubkey", "-noout"}
                     : new String[]{"openssl", "req", "-in", csrCanonical.getPath(), "-noout", "-modulus"}
@@ -709,8 +815,9 @@ public final class SslCertificateManager {
             String certHash = certCanonicalExists ? getCommandHash(
                 certCanonical,
                 "x509",
-                certModifyTime,
+                certCanonicalStat,
                 allowCached,
+                isNewOpenssl ? pem -> PemPublicKeys.getCertificatePublicKey(getCertificateFactory(), pem) : null,
                 isNewOpenssl
                     ? new String[]{"openssl", "x509", "-outform", "PEM", "-in", certCanonical.getPath(), "-pubkey", "-noout"}
                     : new String[]{"openssl", "x509", "-in", certCanonical.getPath(), "-noout", "-modulus"}
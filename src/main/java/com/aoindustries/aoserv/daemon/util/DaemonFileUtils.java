@@ -1,6 +1,6 @@
 /*
  * aoserv-daemon - Server management daemon for the AOServ Platform.
- * Copyright (C) 2008, 2009, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2024  AO Industries, Inc.
+ * Copyright (C) 2008, 2009, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,17 +23,22 @@
 
 package com.aoindustries.aoserv.daemon.util;
 
+import com.aoapps.hodgepodge.io.stream.StreamableOutput;
 import com.aoapps.io.posix.PosixFile;
 import com.aoapps.io.posix.Stat;
 import com.aoapps.lang.io.FileUtils;
 import com.aoapps.lang.io.IoUtils;
+import com.aoapps.lang.util.BufferManager;
 import com.aoapps.tempfiles.TempFile;
 import com.aoapps.tempfiles.TempFileContext;
 import com.aoindustries.aoserv.client.distribution.OperatingSystemVersion;
 import com.aoindustries.aoserv.daemon.AoservDaemon;
+import com.aoindustries.aoserv.daemon.client.AoservDaemonProtocol;
 import com.aoindustries.aoserv.daemon.posix.linux.PackageManager;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -70,6 +75,52 @@ public final class DaemonFileUtils {
     }
   }
 
+  /**
+   * Writes the contents of a file to the daemon protocol, as a series of chunks each preceded by
+   * {@link AoservDaemonProtocol#NEXT} and its length.  The caller writes any size before and the
+   * {@link AoservDaemonProtocol#DONE} after.
+   *
+   * @param  fileSize  the size of the file, which must match the number of bytes read
+   */
+  public static void writeChunks(File file, long fileSize, StreamableOutput out) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      writeChunks(in, fileSize, out);
+    }
+  }
+
+  /**
+   * Writes the contents of a stream to the daemon protocol, as a series of chunks each preceded by
+   * {@link AoservDaemonProtocol#NEXT} and its length.  Each chunk is written as soon as it is read.
+   * The caller writes any size before and the {@link AoservDaemonProtocol#DONE} after.
+   *
+   * @param  size  the number of bytes expected, which must match the number of bytes read,
+   *               or <code>-1</code> when not known in advance
+   *
+   * @return  the number of bytes written
+   */
+  public static long writeChunks(InputStream in, long size, StreamableOutput out) throws IOException {
+    long bytesRead = 0;
+    byte[] buff = BufferManager.getBytes();
+    try {
+      int ret;
+      while ((ret = in.read(buff, 0, BufferManager.BUFFER_SIZE)) != -1) {
+        bytesRead += ret;
+        if (size != -1 && bytesRead > size) {
+          throw new IOException("Too many bytes read: " + bytesRead + " > " + size);
+        }
+        out.writeByte(AoservDaemonProtocol.NEXT);
+        out.writeShort(ret);
+        out.write(buff, 0, ret);
+      }
+    } finally {
+      BufferManager.release(buff, false);
+    }
+    if (size != -1 && bytesRead < size) {
+      throw new IOException("Too few bytes read: " + bytesRead + " < " + size);
+    }
+    return bytesRead;
+  }
+
   /**
    * Copies a resource to the provided filename, will not overwrite any existing file.
    *
@@ -0,0 +1,63 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.iptables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IpReputationManagerTest {
+
+  @Test
+  public void testSortKeyOrdersByOrderFirst() {
+    assertTrue(IpReputationManager.getSortKey(-5, 0x7fffffff) < IpReputationManager.getSortKey(0, Integer.MIN_VALUE));
+    assertTrue(IpReputationManager.getSortKey(0, 0x7fffffff) < IpReputationManager.getSortKey(1, Integer.MIN_VALUE));
+    assertTrue(IpReputationManager.getSortKey(Short.MIN_VALUE, 0) < IpReputationManager.getSortKey(Short.MAX_VALUE, 0));
+    assertTrue(IpReputationManager.getSortKey(-(long) Integer.MAX_VALUE, 0) < IpReputationManager.getSortKey(0, 0));
+  }
+
+  @Test
+  public void testSortKeyOrdersIpsAsSignedIntegers() {
+    // Matches the Integer comparison previously used to order hosts with the same reputation
+    assertTrue(IpReputationManager.getSortKey(3, Integer.MIN_VALUE) < IpReputationManager.getSortKey(3, -1));
+    assertTrue(IpReputationManager.getSortKey(3, -1) < IpReputationManager.getSortKey(3, 0));
+    assertTrue(IpReputationManager.getSortKey(3, 0) < IpReputationManager.getSortKey(3, 1));
+    assertTrue(IpReputationManager.getSortKey(3, 1) < IpReputationManager.getSortKey(3, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void testGetSortedIps() {
+    int a = 0x0a000001; // 10.0.0.1
+    int b = 0xc0a80001; // 192.168.0.1
+    int c = 0x7f000001; // 127.0.0.1
+    long[] sortKeys = {
+        IpReputationManager.getSortKey(2, a),
+        IpReputationManager.getSortKey(-1, b),
+        IpReputationManager.getSortKey(2, c),
+        IpReputationManager.getSortKey(2, b)
+    };
+    assertArrayEquals(new int[] {b, b, a, c}, IpReputationManager.getSortedIps(sortKeys));
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.iptables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class IpsetTest {
+
+  @Test
+  public void testParse() throws IOException {
+    String save = "-N R1 iphash --hashsize 1024 --probes 8 --resize 50\n"
+        + "-A R1 192.168.0.1\n"
+        + "-A R1 10.0.0.1\n"
+        + "  -A R1 10.0.0.2  \n"
+        + "COMMIT\n";
+    assertArrayEquals(
+        new int[] {0xc0a80001, 0x0a000001, 0x0a000002},
+        Ipset.parse(save)
+    );
+  }
+
+  @Test
+  public void testParseEmpty() throws IOException {
+    assertArrayEquals(new int[0], Ipset.parse("-N R1 iphash\nCOMMIT\n"));
+  }
+
+  @Test
+  public void testParseGrowsBeyondInitialCapacity() throws IOException {
+    StringBuilder save = new StringBuilder("-N R1 iphash\n");
+    int[] expected = new int[100];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = 0x0a000000 + i;
+      save.append("-A R1 10.0.").append(i >> 8).append('.').append(i & 0xff).append('\n');
+    }
+    assertArrayEquals(expected, Ipset.parse(save.toString()));
+  }
+
+  @Test
+  public void testParseMissingAddress() {
+    try {
+      Ipset.parse("-A R1\n");
+      fail("IOException expected");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testSortDistinct() {
+    int[] entries = {5, -1, 3, 5, 3, 0};
+    int numDistinct = Ipset.sortDistinct(entries);
+    assertEquals(4, numDistinct);
+    assertArrayEquals(new int[] {-1, 0, 3, 5}, Arrays.copyOf(entries, numDistinct));
+  }
+}
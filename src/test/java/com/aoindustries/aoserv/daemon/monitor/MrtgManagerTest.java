@@ -0,0 +1,91 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class MrtgManagerTest {
+
+  @Test
+  public void testUnescapeMountinfo() {
+    assertEquals("/dev/sda1", MrtgManager.unescapeMountinfo("/dev/sda1"));
+    assertEquals("/mnt/my disk", MrtgManager.unescapeMountinfo("/mnt/my\\040disk"));
+    assertEquals("a\tb\nc\\d", MrtgManager.unescapeMountinfo("a\\011b\\012c\\134d"));
+  }
+
+  @Test
+  public void testParseDfDevices() throws IOException {
+    String mountinfo =
+        "22 1 253:0 / / rw,relatime shared:1 - xfs /dev/mapper/rl-root rw,attr2,inode64\n"
+            + "23 22 0:21 / /proc rw,nosuid,nodev,noexec,relatime shared:2 - proc proc rw\n"
+            + "24 22 8:1 / /boot rw,relatime shared:3 - xfs /dev/sda1 rw,attr2\n"
+            + "25 22 8:1 / /mnt/boot\\040copy rw,relatime - xfs /dev/sda1 rw,attr2\n"
+            + "26 22 8:2 / /var rw,relatime shared:4 master:1 - ext4 /dev/md0 rw\n"
+            + "27 22 0:5 / /dev rw,nosuid shared:5 - devtmpfs devtmpfs rw\n";
+    assertEquals(
+        Arrays.asList("/dev/mapper/rl-root", "/dev/md0", "/dev/sda1"),
+        MrtgManager.parseDfDevices(mountinfo.getBytes(StandardCharsets.UTF_8))
+    );
+  }
+
+  @Test
+  public void testParseDfDevicesSkipsUnsafeNames() throws IOException {
+    String mountinfo =
+        "24 22 8:1 / /boot rw,relatime - xfs /dev/sda1 rw\n"
+            + "25 22 0:40 / /mnt/usb rw,relatime - vfat /dev/disk/by-label/USB\\040KEY rw\n";
+    assertEquals(
+        Collections.singletonList("/dev/sda1"),
+        MrtgManager.parseDfDevices(mountinfo.getBytes(StandardCharsets.UTF_8))
+    );
+  }
+
+  @Test
+  public void testParseDfDevicesMissingSeparator() {
+    try {
+      MrtgManager.parseDfDevices("24 22 8:1 / /boot rw,relatime xfs /dev/sda1 rw\n".getBytes(StandardCharsets.UTF_8));
+      fail("IOException expected");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testGetSafeName() {
+    assertEquals("sda1", MrtgManager.getSafeName("/dev/sda1"));
+    assertEquals("mapper_rl_root", MrtgManager.getSafeName("/dev/mapper/rl-root"));
+    assertEquals("aoluks", MrtgManager.getSafeName("/dev/mapper/ao"));
+    assertEquals("wwwaes256", MrtgManager.getSafeName("/www.aes256.img"));
+    assertNull(MrtgManager.getSafeName("/dev/"));
+    assertNull(MrtgManager.getSafeName("/dev/disk/by-label/USB KEY"));
+    assertNull(MrtgManager.getSafeName("/srv/other.img"));
+  }
+}
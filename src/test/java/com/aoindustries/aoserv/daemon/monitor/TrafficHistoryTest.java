@@ -0,0 +1,160 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Test;
+
+public class TrafficHistoryTest {
+
+  /**
+   * 10.0.0.0/30, four IPs.
+   */
+  private static final int ADDRESS = 0x0a000000;
+  private static final byte PREFIX = 30;
+
+  /**
+   * Builds an ip_counts networks section with one network, where each IP has the given TCP packet and byte counts.
+   */
+  private static NetworkMonitor.NetworksDecoder decode(NetworkMonitor.NetworksDecoder decoder, long[] packets, long[] bytes) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bout)) {
+      out.writeInt(1);
+      out.writeByte(4);
+      out.writeInt(ADDRESS);
+      out.writeByte(PREFIX);
+      for (int i = 0; i < 8; i++) {
+        out.writeLong(0);
+      }
+      for (int ipIndex = 0; ipIndex < packets.length; ipIndex++) {
+        // icmp, udp, tcp, and other: packets followed by bytes
+        out.writeLong(0);
+        out.writeLong(0);
+        out.writeLong(0);
+        out.writeLong(0);
+        out.writeLong(packets[ipIndex]);
+        out.writeLong(bytes[ipIndex]);
+        out.writeLong(0);
+        out.writeLong(0);
+      }
+    }
+    decoder.read(new DataInputStream(new ByteArrayInputStream(bout.toByteArray())));
+    return decoder;
+  }
+
+  @Test
+  public void testCapacityLimitedBySeconds() throws IOException {
+    NetworkMonitor.NetworksDecoder decoder = decode(new NetworkMonitor.NetworksDecoder(), new long[4], new long[4]);
+    assertEquals(10, new TrafficHistory(decoder, 10).getCapacity());
+  }
+
+  @Test
+  public void testMatches() throws IOException {
+    NetworkMonitor.NetworksDecoder decoder = decode(new NetworkMonitor.NetworksDecoder(), new long[4], new long[4]);
+    TrafficHistory history = new TrafficHistory(decoder, 10);
+    assertTrue(history.matches(decoder));
+    assertFalse(history.matches(new NetworkMonitor.NetworksDecoder()));
+  }
+
+  @Test
+  public void testTopTalkers() throws IOException {
+    NetworkMonitor.NetworksDecoder decoder = new NetworkMonitor.NetworksDecoder();
+    decode(decoder, new long[] {1, 5, 0, 3}, new long[] {100, 50, 0, 300});
+    TrafficHistory history = new TrafficHistory(decoder, 10);
+    history.record(decoder, 1000, 1_000_000);
+    decode(decoder, new long[] {1, 5, 0, 3}, new long[] {100, 50, 0, 300});
+    history.record(decoder, 2000, 1_000_000);
+
+    List<TrafficHistory.Talker> byPackets = history.getTopTalkers(10, 2, false);
+    assertEquals(2, byPackets.size());
+    assertEquals(ADDRESS + 1, byPackets.get(0).getIp());
+    assertEquals(10, byPackets.get(0).getPackets());
+    assertEquals(2_000_000, byPackets.get(0).getTimeSpanMicros());
+    assertEquals(5, byPackets.get(0).getPacketRate());
+    assertEquals(ADDRESS + 3, byPackets.get(1).getIp());
+
+    List<TrafficHistory.Talker> byBytes = history.getTopTalkers(1, 10, true);
+    // IPs without traffic are not included
+    assertEquals(3, byBytes.size());
+    assertEquals(ADDRESS + 3, byBytes.get(0).getIp());
+    assertEquals(300, byBytes.get(0).getBytes());
+    assertEquals(ADDRESS, byBytes.get(1).getIp());
+    assertEquals(ADDRESS + 1, byBytes.get(2).getIp());
+  }
+
+  @Test
+  public void testTimeSeriesWrapsOldestFirst() throws IOException {
+    NetworkMonitor.NetworksDecoder decoder = new NetworkMonitor.NetworksDecoder();
+    decode(decoder, new long[4], new long[4]);
+    TrafficHistory history = new TrafficHistory(decoder, 2);
+    for (int i = 1; i <= 3; i++) {
+      decode(decoder, new long[] {0, 0, i, 0}, new long[] {0, 0, i * 10L, 0});
+      history.record(decoder, i * 1000L, 1_000_000);
+    }
+    List<TrafficHistory.Sample> samples = history.getTimeSeries(ADDRESS + 2);
+    assertEquals(2, samples.size());
+    assertEquals(2000, samples.get(0).getTimeEnd());
+    assertEquals(2, samples.get(0).getPackets());
+    assertEquals(3000, samples.get(1).getTimeEnd());
+    assertEquals(30, samples.get(1).getBytes());
+    // Outside the monitored network
+    assertTrue(history.getTimeSeries(ADDRESS + 4).isEmpty());
+  }
+
+  @Test
+  public void testTopTalkersAfterWrap() throws IOException {
+    NetworkMonitor.NetworksDecoder decoder = new NetworkMonitor.NetworksDecoder();
+    decode(decoder, new long[4], new long[4]);
+    TrafficHistory history = new TrafficHistory(decoder, 2);
+    for (int i = 1; i <= 5; i++) {
+      decode(decoder, new long[] {i, 0, 0, 0}, new long[] {i * 10L, 0, 0, 0});
+      history.record(decoder, i * 1000L, 1_000_000);
+    }
+    // Only the two most recent records are retained
+    List<TrafficHistory.Talker> talkers = history.getTopTalkers(60, 1, false);
+    assertEquals(1, talkers.size());
+    assertEquals(4 + 5, talkers.get(0).getPackets());
+    assertEquals(40 + 50, talkers.get(0).getBytes());
+    assertEquals(2_000_000, talkers.get(0).getTimeSpanMicros());
+    assertEquals(5, history.getTopTalkers(1, 1, false).get(0).getPackets());
+  }
+
+  @Test
+  public void testSaturatesCounts() throws IOException {
+    NetworkMonitor.NetworksDecoder decoder = new NetworkMonitor.NetworksDecoder();
+    decode(decoder, new long[] {Long.MAX_VALUE, 0, 0, 0}, new long[4]);
+    TrafficHistory history = new TrafficHistory(decoder, 1);
+    history.record(decoder, 1000, 1_000_000);
+    assertEquals(Integer.MAX_VALUE, history.getTimeSeries(ADDRESS).get(0).getPackets());
+  }
+}
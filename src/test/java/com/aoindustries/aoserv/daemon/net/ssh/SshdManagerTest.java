@@ -0,0 +1,156 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.net.ssh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.junit.Test;
+
+public class SshdManagerTest {
+
+  private static byte[] bytes(String config) {
+    return config.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testParseDirectives() {
+    assertEquals(
+        Arrays.asList(
+            "port 22",
+            "listenaddress 192.0.2.1:22",
+            "subsystem sftp\t/usr/libexec/openssh/sftp-server -l VERBOSE",
+            "usedns no",
+            "x11forwarding"
+        ),
+        SshdManager.parseDirectives(bytes(
+            "# Comment\n"
+                + "\n"
+                + "Port 22\n"
+                + "  ListenAddress   192.0.2.1:22  \n"
+                + "Subsystem\tsftp\t/usr/libexec/openssh/sftp-server -l VERBOSE\n"
+                + "UseDNS=no\n"
+                + "X11Forwarding\n"
+                + "#PermitRootLogin yes\n"
+        ))
+    );
+    assertEquals(Collections.emptyList(), SshdManager.parseDirectives(null));
+  }
+
+  @Test
+  public void testConfigChangeNewFile() {
+    assertEquals(SshdManager.ConfigChange.RESTART, SshdManager.getConfigChange(null, bytes("Port 22\n")));
+  }
+
+  @Test
+  public void testConfigChangeFormattingOnly() {
+    assertEquals(
+        SshdManager.ConfigChange.NONE,
+        SshdManager.getConfigChange(
+            bytes("# Old comment\nPort 22\nUseDNS no\n"),
+            bytes("# New comment\n\nport   22\nUseDNS = no\n")
+        )
+    );
+  }
+
+  @Test
+  public void testConfigChangeReload() {
+    assertEquals(
+        SshdManager.ConfigChange.RELOAD,
+        SshdManager.getConfigChange(
+            bytes("Port 22\nMaxStartups 10:30:100\n"),
+            bytes("Port 22\nMaxStartups 60:30:100\n")
+        )
+    );
+  }
+
+  @Test
+  public void testConfigChangeRestart() {
+    assertEquals(
+        SshdManager.ConfigChange.RESTART,
+        SshdManager.getConfigChange(
+            bytes("AddressFamily inet\nListenAddress 192.0.2.1:22\n"),
+            bytes("AddressFamily inet\nListenAddress 192.0.2.2:22\n")
+        )
+    );
+    assertEquals(
+        SshdManager.ConfigChange.RESTART,
+        SshdManager.getConfigChange(
+            bytes("Port 22\n"),
+            bytes("Port 2222\n")
+        )
+    );
+  }
+
+  @Test
+  public void testConfigChangeMax() {
+    assertEquals(SshdManager.ConfigChange.RELOAD, SshdManager.ConfigChange.NONE.max(SshdManager.ConfigChange.RELOAD));
+    assertEquals(SshdManager.ConfigChange.RESTART, SshdManager.ConfigChange.RESTART.max(SshdManager.ConfigChange.RELOAD));
+  }
+
+  @Test
+  public void testValidationConfigExpandsInclude() {
+    SortedSet<String> confFiles = new TreeSet<>(Arrays.asList(
+        "/etc/ssh/sshd_config.d/50-redhat.conf",
+        "/etc/ssh/sshd_config.d/01-aoserv.conf"
+    ));
+    assertEquals(
+        "# Comment\n"
+            + "Include /etc/ssh/sshd_config.d/01-aoserv.conf\n"
+            + "Include /etc/ssh/10-binds.conf.1234.new\n"
+            + "Include /etc/ssh/sshd_config.d/50-redhat.conf\n"
+            + "Subsystem\tsftp\t/usr/libexec/openssh/sftp-server\n",
+        new String(
+            SshdManager.getValidationConfig(
+                bytes("# Comment\n"
+                    + "Include /etc/ssh/sshd_config.d/*.conf\n"
+                    + "Subsystem\tsftp\t/usr/libexec/openssh/sftp-server\n"),
+                confFiles,
+                "/etc/ssh/10-binds.conf.1234.new"
+            ),
+            StandardCharsets.UTF_8
+        )
+    );
+  }
+
+  @Test
+  public void testValidationConfigWithoutInclude() {
+    assertEquals(
+        "Include /etc/ssh/10-binds.conf.1234.new\n"
+            + "Port 22\n",
+        new String(
+            SshdManager.getValidationConfig(
+                bytes("Port 22\n"),
+                new TreeSet<>(),
+                "/etc/ssh/10-binds.conf.1234.new"
+            ),
+            StandardCharsets.UTF_8
+        )
+    );
+  }
+}
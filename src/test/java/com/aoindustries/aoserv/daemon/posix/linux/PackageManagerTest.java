@@ -0,0 +1,94 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.posix.linux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.aoindustries.aoserv.daemon.posix.linux.PackageManager.PackageName;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.junit.Test;
+
+public class PackageManagerTest {
+
+  private static final long TIMEOUT = 10000;
+
+  /**
+   * Requests made while another thread holds the packages lock, such as during a running yum transaction,
+   * must gather into the same next transaction instead of waiting one behind another.
+   */
+  @Test
+  public void testConcurrentInstallsShareTransaction() throws InterruptedException {
+    final PackageName[] names = {PackageName.AOSERV_FTP_SHELLS, PackageName.AOSERV_PASSWD_SHELL};
+    final AtomicReferenceArray<Throwable> thrown = new AtomicReferenceArray<>(names.length);
+    Thread[] threads = new Thread[names.length];
+    PackageManager.InstallTransaction transaction;
+    synchronized (PackageManager.packagesLock) {
+      for (int i = 0; i < names.length; i++) {
+        final int index = i;
+        threads[i] = new Thread(() -> {
+          try {
+            PackageManager.installPackage(names[index]);
+          } catch (Throwable t) {
+            thrown.set(index, t);
+          }
+        });
+        threads[i].start();
+      }
+      // Both callers must join the pending transaction while the lock is still held
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (true) {
+        synchronized (PackageManager.pendingInstallLock) {
+          transaction = PackageManager.pendingInstall;
+          if (transaction != null && transaction.packageNames.size() == names.length) {
+            // Complete the transaction in place of yum
+            PackageManager.pendingInstall = null;
+            break;
+          }
+        }
+        if (System.currentTimeMillis() >= deadline) {
+          fail("Concurrent requests did not join a single transaction");
+        }
+        Thread.sleep(10);
+      }
+      assertEquals(EnumSet.of(names[0], names[1]), transaction.packageNames);
+      transaction.done = true;
+      for (PackageName name : names) {
+        transaction.failures.put(name, new IOException("Test failure: " + name));
+      }
+    }
+    for (int i = 0; i < names.length; i++) {
+      threads[i].join(TIMEOUT);
+      Throwable t = thrown.get(i);
+      assertNotNull("IOException expected", t);
+      assertSame(IOException.class, t.getClass());
+      // Each caller sees the outcome of the shared transaction
+      assertEquals("Test failure: " + names[i], t.getCause().getMessage());
+    }
+  }
+}
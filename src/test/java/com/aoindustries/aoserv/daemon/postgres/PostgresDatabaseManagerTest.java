@@ -0,0 +1,69 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.postgres;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PostgresDatabaseManagerTest {
+
+  private static final int BLOCK_SIZE = 8192;
+
+  @Test
+  public void testTightlyPackedNotBloated() {
+    // 100 bytes per row, with overhead 128, fits 63 rows per page
+    assertFalse(PostgresDatabaseManager.isBloated(1588, 100000, 100, BLOCK_SIZE));
+  }
+
+  @Test
+  public void testHalfEmptyBloated() {
+    assertTrue(PostgresDatabaseManager.isBloated(3200, 100000, 100, BLOCK_SIZE));
+  }
+
+  @Test
+  public void testSmallTableNotBloated() {
+    // Mostly empty, but too few excess pages to matter
+    assertFalse(PostgresDatabaseManager.isBloated(100, 10, 100, BLOCK_SIZE));
+  }
+
+  @Test
+  public void testSlightlyBloatedNotVacuumed() {
+    assertFalse(PostgresDatabaseManager.isBloated(1800, 100000, 100, BLOCK_SIZE));
+  }
+
+  @Test
+  public void testNotAnalyzedVacuumed() {
+    assertTrue(PostgresDatabaseManager.isBloated(1588, 100000, -1, BLOCK_SIZE));
+    assertTrue(PostgresDatabaseManager.isBloated(1588, -1, 100, BLOCK_SIZE));
+    assertTrue(PostgresDatabaseManager.isBloated(0, 0, 100, BLOCK_SIZE));
+  }
+
+  @Test
+  public void testEmptiedTableBloated() {
+    // All rows deleted since the last analyze left the pages behind
+    assertTrue(PostgresDatabaseManager.isBloated(5000, 0, 100, BLOCK_SIZE));
+  }
+}
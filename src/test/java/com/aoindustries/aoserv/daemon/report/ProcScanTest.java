@@ -0,0 +1,152 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+public class ProcScanTest {
+
+  private static void addProcess(Path procDir, String pid, String status, String cmdline) throws IOException {
+    Path pidDir = Files.createDirectory(procDir.resolve(pid));
+    Files.write(pidDir.resolve("status"), status.getBytes(StandardCharsets.US_ASCII));
+    Files.write(pidDir.resolve("cmdline"), cmdline.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  private static void delete(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static int indexOf(ProcScan scan, int pid) {
+    for (int i = 0; i < scan.size(); i++) {
+      if (scan.getPid(i) == pid) {
+        return i;
+      }
+    }
+    fail("PID not found: " + pid);
+    return -1;
+  }
+
+  @Test
+  public void testScan() throws IOException {
+    Path procDir = Files.createTempDirectory("ProcScanTest");
+    try {
+      addProcess(
+          procDir,
+          "1234",
+          "Name:\thttpd\n"
+              + "Umask:\t0022\n"
+              + "State:\tS (sleeping)\n"
+              + "Tgid:\t1234\n"
+              + "Pid:\t1234\n"
+              + "PPid:\t1\n"
+              + "Uid:\t48\t48\t48\t48\n"
+              + "Gid:\t48\t48\t48\t48\n",
+          "/usr/sbin/httpd\0-DFOREGROUND\0"
+      );
+      addProcess(
+          procDir,
+          "2",
+          "Name:\tkthreadd\n"
+              + "State:\tR (running)\n"
+              + "PPid:\t0\n"
+              + "Uid:\t0\t0\t0\t0\n",
+          ""
+      );
+      addProcess(procDir, "77", "Name:\tpartial\n", "postgres: idle");
+      // Not processes
+      Files.createDirectory(procDir.resolve("self1"));
+      Files.createDirectory(procDir.resolve("1234567890"));
+      Files.write(procDir.resolve("uptime"), "1.00 2.00\n".getBytes(StandardCharsets.US_ASCII));
+
+      ProcScan scan = new ProcScan(procDir.toFile());
+      assertEquals(3, scan.size());
+
+      int httpd = indexOf(scan, 1234);
+      assertEquals('S', scan.getState(httpd));
+      assertEquals(1, scan.getPpid(httpd));
+      assertEquals(48, scan.getUid(httpd));
+      assertEquals("/usr/sbin/httpd", scan.getCommand(httpd));
+
+      int kthreadd = indexOf(scan, 2);
+      assertEquals('R', scan.getState(kthreadd));
+      assertEquals(0, scan.getPpid(kthreadd));
+      assertEquals(0, scan.getUid(kthreadd));
+      assertNull(scan.getCommand(kthreadd));
+
+      int partial = indexOf(scan, 77);
+      assertEquals(0, scan.getState(partial));
+      assertEquals(-1, scan.getPpid(partial));
+      assertEquals(-1, scan.getUid(partial));
+      assertEquals("postgres: idle", scan.getCommand(partial));
+    } finally {
+      delete(procDir);
+    }
+  }
+
+  @Test
+  public void testMissingStatusSkipped() throws IOException {
+    Path procDir = Files.createTempDirectory("ProcScanTest");
+    try {
+      // A process that terminated between listing and reading
+      Files.createDirectory(procDir.resolve("99"));
+      addProcess(procDir, "100", "State:\tZ (zombie)\nPPid:\t99\nUid:\t500\t500\t500\t500\n", "");
+      ProcScan scan = new ProcScan(procDir.toFile());
+      assertEquals(1, scan.size());
+      assertEquals(100, scan.getPid(0));
+      assertEquals('Z', scan.getState(0));
+      assertEquals(99, scan.getPpid(0));
+      assertEquals(500, scan.getUid(0));
+    } finally {
+      delete(procDir);
+    }
+  }
+
+  @Test
+  public void testNotDirectory() throws IOException {
+    Path file = Files.createTempFile("ProcScanTest", null);
+    try {
+      new ProcScan(file.toFile());
+      fail("IOException expected");
+    } catch (IOException e) {
+      // Expected
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class PhysicalServerManagerTest {
+
+  private static DataInputStream response(String... records) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bout)) {
+      for (String record : records) {
+        byte[] bytes = record.getBytes(StandardCharsets.ISO_8859_1);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+      }
+    }
+    return new DataInputStream(new ByteArrayInputStream(bout.toByteArray()));
+  }
+
+  @Test
+  public void testWriteNisCommand() throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    PhysicalServerManager.writeNisCommand(new DataOutputStream(bout), "status");
+    assertArrayEquals(new byte[] {0, 6, 's', 't', 'a', 't', 'u', 's'}, bout.toByteArray());
+  }
+
+  @Test
+  public void testReadNisResponse() throws IOException {
+    assertEquals(
+        "APC      : 001,036,0869\n"
+            + "STATUS   : ONLINE \n"
+            + "BCHARGE  : 100.0 Percent\n",
+        PhysicalServerManager.readNisResponse(response(
+            "APC      : 001,036,0869\n",
+            "STATUS   : ONLINE \n",
+            "BCHARGE  : 100.0 Percent\n",
+            ""
+        ))
+    );
+  }
+
+  @Test
+  public void testReadNisResponseEmpty() throws IOException {
+    assertEquals("", PhysicalServerManager.readNisResponse(response("")));
+  }
+
+  @Test
+  public void testReadNisResponseLongRecord() throws IOException {
+    StringBuilder record = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      record.append('x');
+    }
+    assertEquals(record.toString(), PhysicalServerManager.readNisResponse(response(record.toString(), "")));
+  }
+
+  @Test
+  public void testReadNisResponseTruncated() throws IOException {
+    // Closed before the zero-length record
+    try {
+      PhysicalServerManager.readNisResponse(response("STATUS   : ONLINE \n"));
+      fail("EOFException expected");
+    } catch (EOFException e) {
+      // Expected
+    }
+  }
+}
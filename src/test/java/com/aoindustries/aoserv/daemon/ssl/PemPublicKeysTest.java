@@ -0,0 +1,125 @@
+/*
+ * aoserv-daemon - Server management daemon for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-daemon.
+ *
+ * aoserv-daemon is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-daemon is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-daemon.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.daemon.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import org.junit.Test;
+
+/**
+ * The test-only keys and certificates were generated by <code>openssl</code>, and the expected public key
+ * was printed by <code>openssl pkey -pubout</code>.
+ */
+public class PemPublicKeysTest {
+
+  private static byte[] getResource(String name) throws IOException {
+    try (InputStream in = PemPublicKeysTest.class.getResourceAsStream(name)) {
+      if (in == null) {
+        throw new IOException("Resource not found: " + name);
+      }
+      return in.readAllBytes();
+    }
+  }
+
+  private static String getExpectedPublicKey() throws IOException {
+    return new String(getResource("rsa.pub"), StandardCharsets.US_ASCII);
+  }
+
+  private static CertificateFactory getCertificateFactory() throws CertificateException {
+    return CertificateFactory.getInstance("X.509");
+  }
+
+  @Test
+  public void testPkcs1PrivateKey() throws IOException {
+    assertEquals(getExpectedPublicKey(), PemPublicKeys.getPrivateKeyPublicKey(getResource("rsa-pkcs1.key")));
+  }
+
+  @Test
+  public void testPkcs8PrivateKey() throws IOException {
+    assertEquals(getExpectedPublicKey(), PemPublicKeys.getPrivateKeyPublicKey(getResource("rsa-pkcs8.key")));
+  }
+
+  @Test
+  public void testEncryptedPkcs1PrivateKey() throws IOException {
+    assertNull(PemPublicKeys.getPrivateKeyPublicKey(getResource("rsa-pkcs1-encrypted.key")));
+  }
+
+  @Test
+  public void testEncryptedPkcs8PrivateKey() throws IOException {
+    assertNull(PemPublicKeys.getPrivateKeyPublicKey(getResource("rsa-pkcs8-encrypted.key")));
+  }
+
+  @Test
+  public void testPkcs8PrivateKeyWithHeaders() throws IOException {
+    assertNull(PemPublicKeys.getPrivateKeyPublicKey(getResource("rsa-pkcs8-headers.key")));
+  }
+
+  @Test
+  public void testEcPrivateKey() throws IOException {
+    assertNull(PemPublicKeys.getPrivateKeyPublicKey(getResource("ec.key")));
+  }
+
+  @Test
+  public void testEcPkcs8PrivateKey() throws IOException {
+    assertNull(PemPublicKeys.getPrivateKeyPublicKey(getResource("ec-pkcs8.key")));
+  }
+
+  @Test
+  public void testCsr() throws IOException {
+    assertEquals(getExpectedPublicKey(), PemPublicKeys.getCsrPublicKey(getResource("rsa.csr")));
+  }
+
+  @Test
+  public void testCertificate() throws IOException, CertificateException {
+    assertEquals(getExpectedPublicKey(), PemPublicKeys.getCertificatePublicKey(getCertificateFactory(), getResource("rsa.crt")));
+  }
+
+  @Test
+  public void testNoCertificate() throws IOException, CertificateException {
+    assertNull(PemPublicKeys.getCertificatePublicKey(getCertificateFactory(), getResource("rsa-pkcs1.key")));
+  }
+
+  /**
+   * The combined file has the private key, an unrelated certificate, then the certificate for the key.
+   */
+  @Test
+  public void testCombinedSelectsCertificateForKey() throws IOException, CertificateException {
+    X509Certificate certificate = PemPublicKeys.getCombinedCertificate(getCertificateFactory(), getResource("combined.pem"));
+    assertNotNull(certificate);
+    assertEquals("CN=test.example.com", certificate.getSubjectX500Principal().getName());
+  }
+
+  @Test
+  public void testCombinedWithoutMatchingCertificate() throws IOException, CertificateException {
+    assertNull(PemPublicKeys.getCombinedCertificate(getCertificateFactory(), getResource("rsa-pkcs1.key")));
+  }
+}